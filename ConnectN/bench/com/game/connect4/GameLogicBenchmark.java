@@ -0,0 +1,309 @@
+package com.game.connect4;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * This is the Game Logic Benchmark class,
+ * micro benchmarks of the GameLogic hot paths over a matrix of board sizes.
+ * Like JMH, every benchmark runs in its own forked JVM so the JIT profile of one
+ * can't slow down the next, and gets warm-up rounds before the measured ones.
+ * It reports throughput, average latency and bytes allocated per operation.
+ * Results can be saved and compared against a saved baseline, a run that is
+ * slower than the baseline by more than the tolerance exits with status 1
+ *
+ * Usage: GameLogicBenchmark [--quick] [--save file] [--baseline file] [--tolerance percent]
+ *
+ * @author Yufan Lu
+ */
+public class GameLogicBenchmark {
+	// Board sizes and winning lengths measured
+	private final static int[][] CONFIGS = {
+		{ 7, 6, 4 }, { 19, 19, 5 }, { 100, 100, 5 }, { 100, 100, 4 }
+	};
+	private final static String[] BENCHMARKS = {
+		"clickGrid", "playUndo", "winningMove", "columnQueries", "playableColumns", "copy"
+	};
+	private final static int WARMUP_ROUNDS = 5;
+	private final static int MEASURED_ROUNDS = 10;
+
+	// Results are folded in here so the JIT can't drop the measured work
+	private static volatile long sink;
+
+	private final long roundNanos;
+
+	public GameLogicBenchmark(long roundMillis) {
+		roundNanos = roundMillis * 1000000L;
+	}
+
+	public static void main(String[] args) throws IOException {
+		long roundMillis = 200;
+		String saveFile = null;
+		String baselineFile = null;
+		double tolerance = 10.0;
+		if (args.length == 6 && args[0].equals("--single")) {
+			// forked child: --single name xLen yLen winningLength roundMillis
+			double[] result = new GameLogicBenchmark(Long.parseLong(args[5])).run(args[1],
+					Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+			System.out.println(result[0] + "," + result[1] + "," + result[2]);
+			return;
+		}
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--quick")) {
+				roundMillis = 20;
+			} else if (args[i].equals("--save")) {
+				saveFile = args[++i];
+			} else if (args[i].equals("--baseline")) {
+				baselineFile = args[++i];
+			} else if (args[i].equals("--tolerance")) {
+				tolerance = Double.parseDouble(args[++i]);
+			}
+		}
+
+		Map<String, Double> baseline = baselineFile != null ? load(baselineFile) : new HashMap<String, Double>();
+		List<String> lines = new ArrayList<String>();
+		boolean regressed = false;
+		System.out.println(String.format("%-16s %-12s %14s %12s %10s %10s",
+				"benchmark", "board", "ops/ms", "ns/op", "B/op", "vs base"));
+		for (int c = 0; c < CONFIGS.length; c++) {
+			int[] config = CONFIGS[c];
+			String board = config[0] + "x" + config[1] + "/" + config[2];
+			for (int b = 0; b < BENCHMARKS.length; b++) {
+				double[] result = fork(BENCHMARKS[b], config, roundMillis);
+				String id = BENCHMARKS[b] + "," + board;
+				String change = "";
+				Double base = baseline.get(id);
+				if (base != null) {
+					double percent = (result[0] - base.doubleValue()) * 100.0 / base.doubleValue();
+					change = String.format("%+.1f%%", percent);
+					if (percent < -tolerance) {
+						regressed = true;
+						change += " !";
+					}
+				}
+				System.out.println(String.format("%-16s %-12s %14.1f %12.2f %10.1f %10s",
+						BENCHMARKS[b], board, result[0], result[1], result[2], change));
+				lines.add(id + "," + result[0] + "," + result[1] + "," + result[2]);
+			}
+		}
+		if (saveFile != null) {
+			PrintWriter out = new PrintWriter(new FileWriter(saveFile));
+			for (int i = 0; i < lines.size(); i++) {
+				out.println(lines.get(i));
+			}
+			out.close();
+		}
+		if (regressed) {
+			System.out.println("Throughput regressed by more than " + tolerance + "% against " + baselineFile);
+			System.exit(1);
+		}
+	}
+
+	/* FUNC: fork(String, int[], long) -> double[]
+	 * DESC:
+	 * 	run one benchmark in a fresh JVM with the same class path
+	 * RET:
+	 * 	{ operations per ms, ns per operation, bytes allocated per operation }
+	 */
+	private static double[] fork(String name, int[] config, long roundMillis) throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				GameLogicBenchmark.class.getName(), "--single", name,
+				String.valueOf(config[0]), String.valueOf(config[1]), String.valueOf(config[2]),
+				String.valueOf(roundMillis));
+		builder.redirectErrorStream(true);
+		Process process = builder.start();
+		BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		String line;
+		String last = null;
+		while ((line = in.readLine()) != null) {
+			last = line;
+		}
+		in.close();
+		try {
+			if (process.waitFor() != 0 || last == null) {
+				throw new IOException("Benchmark " + name + " failed: " + last);
+			}
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while running " + name);
+		}
+		String[] parts = last.split(",");
+		return new double[] { Double.parseDouble(parts[0]), Double.parseDouble(parts[1]), Double.parseDouble(parts[2]) };
+	}
+
+	/* FUNC: run(String, int, int, int) -> double[]
+	 * DESC:
+	 * 	warm up, then measure one benchmark on one board size
+	 * RET:
+	 * 	{ operations per ms, ns per operation, bytes allocated per operation }
+	 */
+	public double[] run(String name, int xLen, int yLen, int winningLength) {
+		Fixture fixture = new Fixture(xLen, yLen, winningLength);
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			round(name, fixture);
+		}
+		long ops = 0;
+		long nanos = 0;
+		long bytes = 0;
+		for (int i = 0; i < MEASURED_ROUNDS; i++) {
+			long allocatedBefore = allocatedBytes();
+			long start = System.nanoTime();
+			ops += round(name, fixture);
+			nanos += System.nanoTime() - start;
+			bytes += allocatedBytes() - allocatedBefore;
+		}
+		return new double[] { ops * 1000000.0 / nanos, (double) nanos / ops, (double) bytes / ops };
+	}
+
+	/* FUNC: round(String, Fixture) -> long
+	 * DESC:
+	 * 	call the benchmark in batches until the round time is used up
+	 * RET:
+	 * 	number of operations done
+	 */
+	private long round(String name, Fixture fixture) {
+		long end = System.nanoTime() + roundNanos;
+		long ops = 0;
+		while (System.nanoTime() < end) {
+			ops += batch(name, fixture, 1024);
+		}
+		return ops;
+	}
+
+	private long batch(String name, Fixture f, int count) {
+		long acc = 0;
+		if (name.equals("clickGrid")) {
+			for (int i = 0; i < count; i++) {
+				int column = f.nextColumn();
+				if (f.game.winner() != -1 || !f.game.clickGrid(column, f.game.getColumnHeight(column))) {
+					f.restart();
+				}
+			}
+		} else if (name.equals("playUndo")) {
+			for (int i = 0; i < count; i++) {
+				f.position.play(f.columns[i % f.playableCount]);
+				acc += f.position.winner();
+				f.position.undo();
+			}
+		} else if (name.equals("winningMove")) {
+			// the win is found while playing, winner() then just reports it
+			for (int i = 0; i < count; i++) {
+				f.threat.play(f.winningColumn);
+				acc += f.threat.winner();
+				f.threat.undo();
+			}
+		} else if (name.equals("columnQueries")) {
+			for (int i = 0; i < count; i++) {
+				int column = i % f.xLen;
+				acc += f.position.getColumnHeight(column) + (f.position.isPlayable(column) ? 1 : 0);
+			}
+		} else if (name.equals("playableColumns")) {
+			for (int i = 0; i < count; i++) {
+				acc += f.position.playableColumns(f.columns);
+			}
+		} else if (name.equals("copy")) {
+			for (int i = 0; i < count; i++) {
+				acc += new GameLogic(f.position).getMoveCount();
+			}
+		} else {
+			throw new IllegalArgumentException("Unknown benchmark " + name);
+		}
+		sink += acc;
+		return count;
+	}
+
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0L;
+	}
+
+	private static Map<String, Double> load(String file) throws IOException {
+		Map<String, Double> result = new HashMap<String, Double>();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		String line;
+		while ((line = in.readLine()) != null) {
+			String[] parts = line.split(",");
+			if (parts.length >= 3) {
+				result.put(parts[0] + "," + parts[1], Double.valueOf(parts[2]));
+			}
+		}
+		in.close();
+		return result;
+	}
+
+	/**
+	 * The boards a benchmark works on: a live game that gets played through,
+	 * a half-full position without a winner for the read-only benchmarks,
+	 * and one where the side to move completes a line on the bottom row
+	 */
+	private static class Fixture {
+		final int xLen;
+		final GameLogic game;
+		final GameLogic position;
+		final GameLogic threat;
+		final int winningColumn;
+		final int[] columns;
+		final int playableCount;
+		// Pre-drawn random columns, so the benchmarks don't measure Random
+		final int[] sequence = new int[4096];
+		int next;
+
+		Fixture(int xLen, int yLen, int winningLength) {
+			this.xLen = xLen;
+			game = new GameLogic(xLen, yLen, winningLength);
+			position = new GameLogic(xLen, yLen, winningLength);
+			columns = new int[xLen];
+			Random random = new Random(42);
+			for (int i = 0; i < sequence.length; i++) {
+				sequence[i] = random.nextInt(xLen);
+			}
+			for (int i = 0; i < xLen * yLen / 2; i++) {
+				int column = nextColumn();
+				if (!position.play(column)) {
+					continue;
+				}
+				if (position.winner() != -1) {
+					position.undo();
+				}
+			}
+			playableCount = position.playableColumns(columns);
+
+			// the first player's discs on the bottom row, the second player's on top of them
+			threat = new GameLogic(xLen, yLen, winningLength);
+			for (int i = 0; i < winningLength - 1; i++) {
+				threat.play(i);
+				threat.play(i);
+			}
+			winningColumn = winningLength - 1;
+			threat.play(winningColumn);
+			if (threat.winner() != GameLogic.GRID_FIRST_PLAYER) {
+				throw new IllegalStateException("No winning move on " + xLen + "x" + yLen + "/" + winningLength);
+			}
+			threat.undo();
+		}
+
+		int nextColumn() {
+			next = (next + 1) & (sequence.length - 1);
+			return sequence[next];
+		}
+
+		void restart() {
+			while (game.undo()) {
+			}
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package com.game.connect4;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is the Analysis Service class,
+ * NegamaxEngine searches to a depth shared between any number of callers.
+ * Every search also has a wall clock budget, past which it answers with the
+ * deepest iteration it finished, so no position ties a thread up for long.
+ * Requests for the same position and depth while a search is running join
+ * that search instead of starting their own, and the result is kept for a
+ * short while after it finishes. Positions are matched by canonical key, so
+ * a position and its mirror image share one search and the best column is
+ * mirrored back for whoever asked about the other one.
+ * Searches run on a fixed pool of threads, each with its own engine
+ *
+ * @author Yufan Lu
+ */
+public class AnalysisService {
+	// Finished searches are swept out every this many new ones
+	private final static int SWEEP_INTERVAL = 256;
+
+	private final ConcurrentHashMap<Key, Flight> flights = new ConcurrentHashMap<Key, Flight>();
+	private final ExecutorService pool;
+	private final ThreadLocal<NegamaxEngine> engines;
+	private final long ttlNanos;
+	private final long budgetMillis;
+	private final AtomicInteger sinceSweep = new AtomicInteger();
+
+	// Statistics
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong searches = new AtomicLong();
+	private final AtomicLong joined = new AtomicLong();
+	private final AtomicLong cacheHits = new AtomicLong();
+
+	/*
+	 * FUNC: Constructor(int, int, long, long)
+	 * DESC:
+	 * 	start the search threads
+	 * ARGS:
+	 * 	threads        -- searches run at the same time
+	 * 	tableMegabytes -- transposition table size of each engine
+	 * 	ttlMillis      -- how long a finished search is still handed out
+	 * 	budgetMillis   -- longest a search may take, at least 1
+	 */
+	public AnalysisService(int threads, final int tableMegabytes, long ttlMillis, long budgetMillis) {
+		if (budgetMillis < 1) {
+			throw new IllegalArgumentException("Bad analysis budget " + budgetMillis + "ms, it must be at least 1ms");
+		}
+		ttlNanos = ttlMillis * 1000000L;
+		this.budgetMillis = budgetMillis;
+		final AtomicInteger count = new AtomicInteger();
+		pool = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "analysis-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		engines = new ThreadLocal<NegamaxEngine>() {
+			@Override
+			protected NegamaxEngine initialValue() {
+				return new NegamaxEngine(tableMegabytes);
+			}
+		};
+	}
+
+	/* FUNC: analyze(GameLogic, int) -> SearchResult
+	 * DESC:
+	 * 	search the position to a depth within the time budget, or join a search
+	 * 	of it already running or just finished, waiting for the result
+	 * ARGS:
+	 * 	position -- the position, not touched, copy it first if another thread plays on it
+	 * 	depth    -- depth limit, see NegamaxEngine.search()
+	 * RET:
+	 * 	a result of the caller's own, with the best column for the position as given
+	 * 	and the depth actually reached,
+	 * 	IllegalStateException if the search failed
+	 */
+	public SearchResult analyze(GameLogic position, int depth) throws InterruptedException {
+		requests.incrementAndGet();
+		Key key = new Key(position, depth);
+		Flight flight = flights.get(key);
+		if (flight != null && flight.isExpired()) {
+			flights.remove(key, flight);
+			flight = null;
+		}
+		if (flight == null) {
+			Flight created = new Flight(new GameLogic(position), depth);
+			flight = flights.putIfAbsent(key, created);
+			if (flight == null) {
+				searches.incrementAndGet();
+				try {
+					pool.execute(created);
+				} catch (RejectedExecutionException e) {
+					// never going to run, so nobody may join it
+					created.reject(e);
+					throw new IllegalStateException("Analysis is shut down", e);
+				}
+				if (sinceSweep.incrementAndGet() >= SWEEP_INTERVAL) {
+					sinceSweep.set(0);
+					sweep();
+				}
+				return localize(created.await(), position);
+			}
+		}
+		if (flight.isDone()) {
+			cacheHits.incrementAndGet();
+		} else {
+			joined.incrementAndGet();
+		}
+		return localize(flight.await(), position);
+	}
+
+	public long getRequests() {
+		return requests.get();
+	}
+
+	public long getSearches() {
+		return searches.get();
+	}
+
+	public long getJoined() {
+		return joined.get();
+	}
+
+	public long getCacheHits() {
+		return cacheHits.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d requests, %d searches, %d joined a running search, %d cache hits, %d kept",
+				requests.get(), searches.get(), joined.get(), cacheHits.get(), flights.size());
+	}
+
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	/* FUNC: sweep() -> void
+	 * DESC:
+	 * 	drop expired results, so positions nobody asks about again don't pile up
+	 */
+	private void sweep() {
+		Iterator<Map.Entry<Key, Flight>> it = flights.entrySet().iterator();
+		while (it.hasNext()) {
+			if (it.next().getValue().isExpired()) {
+				it.remove();
+			}
+		}
+	}
+
+	/* FUNC: localize(SearchResult, GameLogic) -> SearchResult
+	 * DESC:
+	 * 	copy a shared result, turning its canonical best column into one for the position
+	 */
+	private static SearchResult localize(SearchResult shared, GameLogic position) {
+		SearchResult result = new SearchResult();
+		result.bestColumn = position.canonicalColumn(shared.bestColumn);
+		result.score = shared.score;
+		result.depth = shared.depth;
+		result.nodes = shared.nodes;
+		result.timeMillis = shared.timeMillis;
+		result.cutoffs = shared.cutoffs;
+		result.firstMoveCutoffs = shared.firstMoveCutoffs;
+		return result;
+	}
+
+	/**
+	 * Identifies a search: the board, the canonical position and the depth
+	 */
+	private static final class Key {
+		private final int xLen;
+		private final int yLen;
+		private final int winningLength;
+		private final long position;
+		private final int depth;
+
+		Key(GameLogic game, int depth) {
+			xLen = game.getXLen();
+			yLen = game.getYLen();
+			winningLength = game.getWinningSize();
+			position = game.getCanonicalKey();
+			this.depth = depth;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return position == key.position && depth == key.depth && xLen == key.xLen &&
+					yLen == key.yLen && winningLength == key.winningLength;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (position ^ (position >>> 32)) * 31 + depth;
+		}
+	}
+
+	/**
+	 * One search and everyone waiting for it, stays in the map until it expires
+	 */
+	private final class Flight extends FutureTask<SearchResult> {
+		private final Key key;
+		// Set when the search finishes, until then the flight never expires
+		private long finishedAt;
+		private volatile boolean finished;
+
+		Flight(final GameLogic position, final int depth) {
+			super(new Callable<SearchResult>() {
+				@Override
+				public SearchResult call() {
+					SearchResult result = engines.get().search(position, budgetMillis, 0, depth);
+					// stored for the canonical orientation of the position
+					result.bestColumn = position.canonicalColumn(result.bestColumn);
+					return result;
+				}
+			});
+			key = new Key(position, depth);
+		}
+
+		@Override
+		protected void done() {
+			finishedAt = System.nanoTime();
+			finished = true;
+			try {
+				get();
+			} catch (Exception e) {
+				// don't hand out a failure, the next request searches again
+				flights.remove(key, this);
+			}
+		}
+
+		/* FUNC: reject(RejectedExecutionException) -> void
+		 * DESC:
+		 * 	fail the search when the pool wouldn't take it, done() then drops it from the map
+		 * 	and anyone who already joined gets the failure
+		 */
+		void reject(RejectedExecutionException e) {
+			setException(e);
+		}
+
+		boolean isExpired() {
+			return finished && System.nanoTime() - finishedAt > ttlNanos;
+		}
+
+		/* FUNC: await() -> SearchResult
+		 * DESC:
+		 * 	wait for the search
+		 * RET:
+		 * 	the shared result, IllegalStateException if the search failed
+		 */
+		SearchResult await() throws InterruptedException {
+			try {
+				return get();
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Analysis failed", e.getCause());
+			}
+		}
+	}
+}
@@ -0,0 +1,222 @@
+package com.game.connect4;
+
+import java.util.Arrays;
+
+/**
+ * This is the Bit Board class,
+ * one bitset per player with cells indexed column by column (x * yLen + y).
+ * Boards up to 64 cells are kept in a single long per player,
+ * bigger ones in long[] words
+ *
+ * @author Yufan Lu
+ */
+public abstract class BitBoard {
+	protected final int cellCount;
+
+	protected BitBoard(int cells) {
+		cellCount = cells;
+	}
+
+	/* FUNC: create(int) -> BitBoard
+	 * DESC:
+	 * 	pick the smallest representation that can hold the board
+	 * ARG:
+	 * 	cells -- number of cells on the board
+	 * RET:
+	 * 	an empty bit board
+	 */
+	public static BitBoard create(int cells) {
+		if (cells <= 64) {
+			return new Small(cells);
+		}
+		return new Large(cells);
+	}
+
+	public int getCellCount() {
+		return cellCount;
+	}
+
+	/* FUNC: get(int) -> int
+	 * DESC:
+	 * 	read one cell
+	 * ARG:
+	 * 	index -- cell index
+	 * RET:
+	 * 	GRID_EMPTY, GRID_FIRST_PLAYER or GRID_SECOND_PLAYER
+	 */
+	public abstract int get(int index);
+
+	/* FUNC: isSet(int, int) -> boolean
+	 * DESC:
+	 * 	test whether the player owns the cell
+	 * ARG:
+	 * 	player -- GRID_FIRST_PLAYER or GRID_SECOND_PLAYER
+	 * 	index  -- cell index
+	 */
+	public abstract boolean isSet(int player, int index);
+
+	/* FUNC: set(int, int) -> void
+	 * DESC:
+	 * 	put a disc of the player on the cell
+	 */
+	public abstract void set(int player, int index);
+
+	/* FUNC: clear(int, int) -> void
+	 * DESC:
+	 * 	take the player's disc away from the cell
+	 */
+	public abstract void clear(int player, int index);
+
+	/* FUNC: reset() -> void
+	 * DESC:
+	 * 	empty the whole board
+	 */
+	public abstract void reset();
+
+	/* FUNC: copy() -> BitBoard
+	 * DESC:
+	 * 	duplicate the board, which is just a couple of word copies
+	 */
+	public abstract BitBoard copy();
+
+	/* FUNC: copyFrom(BitBoard) -> void
+	 * DESC:
+	 * 	overwrite this board with another one of the same size
+	 */
+	public abstract void copyFrom(BitBoard other);
+
+	/**
+	 * Boards with at most 64 cells, one long per player
+	 */
+	static final class Small extends BitBoard {
+		long first;
+		long second;
+
+		Small(int cells) {
+			super(cells);
+		}
+
+		@Override
+		public int get(int index) {
+			long bit = 1L << index;
+			if ((first & bit) != 0) {
+				return GameLogic.GRID_FIRST_PLAYER;
+			}
+			if ((second & bit) != 0) {
+				return GameLogic.GRID_SECOND_PLAYER;
+			}
+			return GameLogic.GRID_EMPTY;
+		}
+
+		@Override
+		public boolean isSet(int player, int index) {
+			long words = player == GameLogic.GRID_FIRST_PLAYER ? first : second;
+			return (words & (1L << index)) != 0;
+		}
+
+		@Override
+		public void set(int player, int index) {
+			if (player == GameLogic.GRID_FIRST_PLAYER) {
+				first |= 1L << index;
+			} else {
+				second |= 1L << index;
+			}
+		}
+
+		@Override
+		public void clear(int player, int index) {
+			if (player == GameLogic.GRID_FIRST_PLAYER) {
+				first &= ~(1L << index);
+			} else {
+				second &= ~(1L << index);
+			}
+		}
+
+		@Override
+		public void reset() {
+			first = 0L;
+			second = 0L;
+		}
+
+		@Override
+		public BitBoard copy() {
+			Small result = new Small(cellCount);
+			result.first = first;
+			result.second = second;
+			return result;
+		}
+
+		@Override
+		public void copyFrom(BitBoard other) {
+			Small src = (Small) other;
+			first = src.first;
+			second = src.second;
+		}
+	}
+
+	/**
+	 * Boards with more than 64 cells, long[] words per player
+	 */
+	static final class Large extends BitBoard {
+		long[] first;
+		long[] second;
+
+		Large(int cells) {
+			super(cells);
+			first = new long[(cells + 63) >>> 6];
+			second = new long[first.length];
+		}
+
+		@Override
+		public int get(int index) {
+			long bit = 1L << index;
+			int word = index >>> 6;
+			if ((first[word] & bit) != 0) {
+				return GameLogic.GRID_FIRST_PLAYER;
+			}
+			if ((second[word] & bit) != 0) {
+				return GameLogic.GRID_SECOND_PLAYER;
+			}
+			return GameLogic.GRID_EMPTY;
+		}
+
+		@Override
+		public boolean isSet(int player, int index) {
+			long[] words = player == GameLogic.GRID_FIRST_PLAYER ? first : second;
+			return (words[index >>> 6] & (1L << index)) != 0;
+		}
+
+		@Override
+		public void set(int player, int index) {
+			long[] words = player == GameLogic.GRID_FIRST_PLAYER ? first : second;
+			words[index >>> 6] |= 1L << index;
+		}
+
+		@Override
+		public void clear(int player, int index) {
+			long[] words = player == GameLogic.GRID_FIRST_PLAYER ? first : second;
+			words[index >>> 6] &= ~(1L << index);
+		}
+
+		@Override
+		public void reset() {
+			Arrays.fill(first, 0L);
+			Arrays.fill(second, 0L);
+		}
+
+		@Override
+		public BitBoard copy() {
+			Large result = new Large(cellCount);
+			System.arraycopy(first, 0, result.first, 0, first.length);
+			System.arraycopy(second, 0, result.second, 0, second.length);
+			return result;
+		}
+
+		@Override
+		public void copyFrom(BitBoard other) {
+			Large src = (Large) other;
+			System.arraycopy(src.first, 0, first, 0, first.length);
+			System.arraycopy(src.second, 0, second, 0, second.length);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package com.game.connect4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This is the Board Snapshot class,
+ * a read-only position taken from a GameLogic with GameLogic.snapshot().
+ * Taking one copies nothing: the snapshot shares the game's board, column
+ * heights and move list, and the game copies them before its next change.
+ * All fields are final and the shared arrays are never written again, so any
+ * thread can read a snapshot without locks while the live game moves on
+ *
+ * @author Yufan Lu
+ */
+public final class BoardSnapshot {
+	private final int xLen;
+	private final int yLen;
+	private final int winningSize;
+	private final BitBoard board;
+	private final int[] heights;
+	private final int[] moves;
+	private final int moveCount;
+	private final int currentPlayer;
+	private final int winner;
+	private final int status;
+	private final long key;
+	private final List<MyPoint<Integer> > winningTrack;
+
+	/*
+	 * FUNC: Constructor(GameLogic, BitBoard, int[], int[])
+	 * DESC:
+	 * 	only called by GameLogic, which hands over its arrays and stops writing to them
+	 */
+	BoardSnapshot(GameLogic game, BitBoard board, int[] heights, int[] moves) {
+		xLen = game.getXLen();
+		yLen = game.getYLen();
+		winningSize = game.getWinningSize();
+		this.board = board;
+		this.heights = heights;
+		this.moves = moves;
+		moveCount = game.getMoveCount();
+		currentPlayer = game.getCurrentPlayer();
+		winner = game.winner();
+		status = game.status();
+		key = game.getKey();
+		if (winner == -1) {
+			winningTrack = Collections.emptyList();
+		} else {
+			winningTrack = Collections.unmodifiableList(new ArrayList<MyPoint<Integer> >(game.GetWinningTrack()));
+		}
+	}
+
+	public int getXLen() {
+		return xLen;
+	}
+
+	public int getYLen() {
+		return yLen;
+	}
+
+	public int getWinningSize() {
+		return winningSize;
+	}
+
+	/* FUNC: getGrid(int, int) -> int
+	 * DESC:
+	 * 	same values as GameLogic.getGrid()
+	 */
+	public int getGrid(int x, int y) {
+		if (heights[x] == y) {
+			return GameLogic.GRID_PLACEABLE;
+		}
+		return board.get(x * yLen + y);
+	}
+
+	public int getColumnHeight(int x) {
+		return heights[x];
+	}
+
+	public boolean isPlayable(int x) {
+		return heights[x] < yLen;
+	}
+
+	public int getMoveCount() {
+		return moveCount;
+	}
+
+	public int getMove(int ply) {
+		if (ply >= moveCount) {
+			throw new IndexOutOfBoundsException("Move " + ply + " of " + moveCount);
+		}
+		return moves[ply];
+	}
+
+	public int getCurrentPlayer() {
+		return currentPlayer;
+	}
+
+	public int winner() {
+		return winner;
+	}
+
+	public int status() {
+		return status;
+	}
+
+	public long getKey() {
+		return key;
+	}
+
+	public List<MyPoint<Integer> > getWinningTrack() {
+		return winningTrack;
+	}
+
+	/* FUNC: toGameLogic() -> GameLogic
+	 * DESC:
+	 * 	a new live game at this position, for a reader that wants to search from it
+	 */
+	public GameLogic toGameLogic() {
+		GameLogic game = new GameLogic(xLen, yLen, winningSize);
+		for (int i = 0; i < moveCount; i++) {
+			game.play(moves[i]);
+		}
+		return game;
+	}
+}
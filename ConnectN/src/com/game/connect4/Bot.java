@@ -0,0 +1,24 @@
+package com.game.connect4;
+
+/**
+ * This is the Bot interface,
+ * a computer player that can be pitted against another one without any UI.
+ * A bot is used by one thread at a time
+ *
+ * @author Yufan Lu
+ */
+public interface Bot {
+	/* FUNC: newGame(long) -> void
+	 * DESC:
+	 * 	called before every game, so a game can be replayed from its seed
+	 */
+	void newGame(long seed);
+
+	/* FUNC: chooseColumn(GameLogic) -> int
+	 * DESC:
+	 * 	pick a move for the side to move, the game must be left as it was
+	 * RET:
+	 * 	a playable column
+	 */
+	int chooseColumn(GameLogic game);
+}
@@ -0,0 +1,247 @@
+package com.game.connect4;
+
+import java.io.IOException;
+
+/**
+ * This is the Bot Factory class,
+ * builds bots from short text specs so they can be picked on the command line:
+ * 	random            -- uniformly random playable column
+ * 	greedy            -- wins if it can, otherwise a random move that doesn't hand the opponent a win
+ * 	negamax:DEPTH     -- NegamaxEngine searching DEPTH plies, at least 1
+ * 	negamax:DEPTHms   -- NegamaxEngine thinking DEPTH milliseconds
+ * 	mcts:ITERATIONS   -- single threaded MctsEngine with that many playouts
+ * 	perfect           -- PerfectSolver, standard 7x6 connect 4 only, all of them share one table
+ * 	                     and the exact book perfect-7x6-4.bin, which must be in the working
+ * 	                     directory since the early plies take far too long to solve in a game
+ * 	perfect:MILLISms  -- the same, giving up on a position past the book after MILLIS
+ * 	                     milliseconds and playing the best column it knows
+ *
+ * @author Yufan Lu
+ */
+public class BotFactory {
+	// Bots are built per thread, so keep their tables small
+	private final static int TABLE_MEGABYTES = 4;
+	private final static int MCTS_NODES = 1 << 18;
+	// Table and book of every perfect bot, made with the first one
+	private static PerfectSolver perfectTable;
+	private static OpeningBook perfectBook;
+	private final static String PERFECT_BOOK = OpeningBook.perfectFileName(SolverPosition.WIDTH, SolverPosition.HEIGHT, 4);
+
+	/* FUNC: create(String, int, int, int) -> Bot
+	 * DESC:
+	 * 	build a fresh bot from its spec for a board size
+	 * ARG:
+	 * 	spec -- see the class comment
+	 * RET:
+	 * 	the bot, IllegalArgumentException for a bad spec or one that can't play on the board
+	 */
+	public static Bot create(String spec, int xLen, int yLen, int winningLength) {
+		String name = spec;
+		String argument = null;
+		int colon = spec.indexOf(':');
+		if (colon >= 0) {
+			name = spec.substring(0, colon);
+			argument = spec.substring(colon + 1);
+		}
+		if (name.equals("random")) {
+			return new RandomBot();
+		} else if (name.equals("greedy")) {
+			return new GreedyBot();
+		} else if (name.equals("negamax")) {
+			String value = argument == null ? "4" : argument;
+			// without a depth or a time limit the search would never return
+			if (value.endsWith("ms")) {
+				long millis = Long.parseLong(value.substring(0, value.length() - 2));
+				if (millis < 1) {
+					throw new IllegalArgumentException("Bad think time in " + spec + ", it must be at least 1ms");
+				}
+				return new NegamaxBot(0, millis);
+			}
+			int depth = Integer.parseInt(value);
+			if (depth < 1) {
+				throw new IllegalArgumentException("Bad depth in " + spec + ", it must be at least 1");
+			}
+			return new NegamaxBot(depth, 0);
+		} else if (name.equals("mcts")) {
+			return new MctsBot(argument == null ? 1000 : Long.parseLong(argument));
+		} else if (name.equals("perfect")) {
+			if (xLen != SolverPosition.WIDTH || yLen != SolverPosition.HEIGHT || winningLength != 4) {
+				throw new IllegalArgumentException("The perfect bot only plays 7x6/4, not " +
+						xLen + "x" + yLen + "/" + winningLength);
+			}
+			long millis = 0;
+			if (argument != null) {
+				if (!argument.endsWith("ms")) {
+					throw new IllegalArgumentException("Bad think time in " + spec + ", use perfect:MILLISms");
+				}
+				millis = Long.parseLong(argument.substring(0, argument.length() - 2));
+				if (millis < 1) {
+					throw new IllegalArgumentException("Bad think time in " + spec + ", it must be at least 1ms");
+				}
+			}
+			PerfectSolver table = sharedPerfectTable();
+			if (perfectBook == null) {
+				throw new IllegalArgumentException("The perfect bot needs " + PERFECT_BOOK +
+						" in the working directory, write it with --build-book --perfect");
+			}
+			PerfectBot bot = new PerfectBot(table, millis);
+			bot.solver.setOpeningBook(perfectBook);
+			return bot;
+		}
+		throw new IllegalArgumentException("Unknown bot: " + spec);
+	}
+
+	private static synchronized PerfectSolver sharedPerfectTable() {
+		if (perfectTable == null) {
+			try {
+				perfectBook = OpeningBook.openIfPresent(PERFECT_BOOK, SolverPosition.WIDTH, SolverPosition.HEIGHT, 4);
+			} catch (IOException e) {
+				throw new IllegalArgumentException("Can't read " + PERFECT_BOOK + ": " + e.getMessage(), e);
+			}
+			perfectTable = new PerfectSolver();
+		}
+		return perfectTable;
+	}
+
+	private static long nextRandom(long x) {
+		x ^= x << 13;
+		x ^= x >>> 7;
+		x ^= x << 17;
+		return x;
+	}
+
+	/* FUNC: randomColumn(GameLogic, int[], long) -> int
+	 * DESC:
+	 * 	uniformly random playable column
+	 */
+	private static int randomColumn(GameLogic game, int[] columns, long random) {
+		int count = game.playableColumns(columns);
+		return columns[(int) ((random >>> 1) % count)];
+	}
+
+	static class RandomBot implements Bot {
+		private long random = 1L;
+		private int[] columns = new int[0];
+
+		@Override
+		public void newGame(long seed) {
+			random = seed * 0x9E3779B97F4A7C15L | 1L;
+		}
+
+		@Override
+		public int chooseColumn(GameLogic game) {
+			if (columns.length != game.getXLen()) {
+				columns = new int[game.getXLen()];
+			}
+			random = nextRandom(random);
+			return randomColumn(game, columns, random);
+		}
+	}
+
+	static class GreedyBot implements Bot {
+		private long random = 1L;
+		private int[] columns = new int[0];
+		private int[] safe = new int[0];
+
+		@Override
+		public void newGame(long seed) {
+			random = seed * 0x9E3779B97F4A7C15L | 1L;
+		}
+
+		@Override
+		public int chooseColumn(GameLogic game) {
+			if (columns.length != game.getXLen()) {
+				columns = new int[game.getXLen()];
+				safe = new int[game.getXLen()];
+			}
+			int count = game.playableColumns(columns);
+			int safeCount = 0;
+			for (int i = 0; i < count; i++) {
+				game.play(columns[i]);
+				boolean wins = game.winner() != -1;
+				boolean losing = !wins && opponentCanWin(game);
+				game.undo();
+				if (wins) {
+					return columns[i];
+				}
+				if (!losing) {
+					safe[safeCount++] = columns[i];
+				}
+			}
+			random = nextRandom(random);
+			if (safeCount > 0) {
+				return safe[(int) ((random >>> 1) % safeCount)];
+			}
+			return columns[(int) ((random >>> 1) % count)];
+		}
+
+		private static boolean opponentCanWin(GameLogic game) {
+			for (int column = 0; column < game.getXLen(); column++) {
+				if (game.play(column)) {
+					boolean wins = game.winner() != -1;
+					game.undo();
+					if (wins) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+	}
+
+	static class NegamaxBot implements Bot {
+		private final NegamaxEngine engine = new NegamaxEngine(TABLE_MEGABYTES);
+		private final int depth;
+		private final long millis;
+
+		NegamaxBot(int depth, long millis) {
+			this.depth = depth;
+			this.millis = millis;
+		}
+
+		@Override
+		public void newGame(long seed) {
+		}
+
+		@Override
+		public int chooseColumn(GameLogic game) {
+			return engine.search(game, millis, 0, depth).bestColumn;
+		}
+	}
+
+	static class MctsBot implements Bot {
+		private final MctsEngine engine = new MctsEngine(1, MCTS_NODES);
+		private final long iterations;
+
+		MctsBot(long iterations) {
+			this.iterations = iterations;
+		}
+
+		@Override
+		public void newGame(long seed) {
+		}
+
+		@Override
+		public int chooseColumn(GameLogic game) {
+			return engine.search(game, 0, iterations).bestColumn;
+		}
+	}
+
+	static class PerfectBot implements Bot {
+		private final PerfectSolver solver;
+
+		PerfectBot(PerfectSolver tableOwner, long millis) {
+			solver = new PerfectSolver(tableOwner);
+			solver.setTimeLimit(millis);
+		}
+
+		@Override
+		public void newGame(long seed) {
+		}
+
+		@Override
+		public int chooseColumn(GameLogic game) {
+			return solver.bestColumn(game).bestColumn;
+		}
+	}
+}
@@ -26,16 +26,47 @@ public class ConnectNApplication implements ApplicationListener {
 	int sizeX;
 	int sizeY;
 	int winningLength;
+	// Thinking time of the computer player in ms, 0 for two human players
+	int aiMillis;
 
-	public static void main(String[] args) {
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length > 0 && args[0].equals("--simulate")) {
+			// headless self play, no window and no libGDX
+			SelfPlaySimulator.main(args);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("--build-book")) {
+			OpeningBookBuilder.main(args);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("--build-archive")) {
+			GameArchiveBuilder.main(args);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("--query-archive")) {
+			GameArchive.main(args);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("--serve")) {
+			GameServer.main(args);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("--tournament")) {
+			TournamentRunner.main(args);
+			return;
+		}
 		if (args.length < 3) {
-			System.out.println("Usage: java -jar Connect4.jar [GridSizeX] [GridSizeY] [WinningLength]");
+			System.out.println("Usage: java -jar Connect4.jar [GridSizeX] [GridSizeY] [WinningLength] [AiMillis]");
 			return;
 		}
-		new LwjglApplication(new ConnectNApplication(
+		ConnectNApplication app = new ConnectNApplication(
 				Integer.parseInt(args[0]), 
 				Integer.parseInt(args[1]), 
-				Integer.parseInt(args[2])), "Connect N(4)", 1280, 720, true);
+				Integer.parseInt(args[2]));
+		if (args.length > 3) {
+			app.aiMillis = Integer.parseInt(args[3]);
+		}
+		new LwjglApplication(app, "Connect N(4)", 1280, 720, true);
 	}
 	
 	public ConnectNApplication(int gridSizeX, int gridSizeY, int winningLen) {
@@ -0,0 +1,215 @@
+package com.game.connect4;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This is the Game Archive class,
+ * a GameRecord file plus an index of every position its games went through,
+ * written by GameArchiveBuilder. The index is memory-mapped and searched in
+ * place, mapped in segments so it can be far bigger than the heap or 2GB.
+ * Index layout, big endian:
+ * 	header -- magic, version, xLen, yLen, winningLength, 0 (6 ints), entry count (long),
+ * 	          padding to HEADER_SIZE
+ * 	entries sorted by key, then column and result, each 24 bytes:
+ * 		long key    -- GameLogic.getCanonicalKey() of the position
+ * 		long counts -- games << 16 | canonical next column << 2 | result,
+ * 		               column END_COLUMN for games that ended there
+ * 		long game   -- records file offset of the first such game
+ * so a position takes at most 4 * (xLen + 1) neighbouring entries, however many games reached it
+ *
+ * Usage: --query-archive RECORDS [--index FILE] [MOVES], MOVES as column digits
+ * 	or comma separated columns, none for the empty board
+ *
+ * @author Yufan Lu
+ */
+public class GameArchive {
+	// Constants
+	public final static int MAGIC = 0x434E4149;
+	public final static int VERSION = 1;
+	public final static int HEADER_SIZE = 48;
+	public final static int ENTRY_SIZE = 24;
+	public final static int END_COLUMN = 0x3FFF;
+	// Entries per mapped segment, no entry crosses a segment
+	private final static long SEGMENT_ENTRIES = 1L << 25;
+
+	private final File recordsFile;
+	private final MappedByteBuffer[] segments;
+	private final int xLen;
+	private final int yLen;
+	private final int winningLength;
+	private final long count;
+
+	/*
+	 * FUNC: Constructor(File, File)
+	 * DESC:
+	 * 	map an archive's index and check its header
+	 * ARGS:
+	 * 	records -- the GameRecord file
+	 * 	index   -- its index
+	 */
+	public GameArchive(File records, File index) throws IOException {
+		recordsFile = records;
+		RandomAccessFile raf = new RandomAccessFile(index, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			if (size < HEADER_SIZE) {
+				throw new IOException(index + " is not a game archive index");
+			}
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+				throw new IOException(index + " is not a game archive index");
+			}
+			xLen = header.getInt(8);
+			yLen = header.getInt(12);
+			winningLength = header.getInt(16);
+			count = header.getLong(24);
+			if (HEADER_SIZE + count * ENTRY_SIZE > size) {
+				throw new IOException(index + " is truncated");
+			}
+			segments = new MappedByteBuffer[(int) ((count + SEGMENT_ENTRIES - 1) / SEGMENT_ENTRIES)];
+			for (int i = 0; i < segments.length; i++) {
+				long first = i * SEGMENT_ENTRIES;
+				long entries = Math.min(SEGMENT_ENTRIES, count - first);
+				// the mappings stay valid after the file is closed
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+						HEADER_SIZE + first * ENTRY_SIZE, entries * ENTRY_SIZE);
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		String records = null;
+		String index = null;
+		String moves = "";
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--index")) {
+				index = args[++i];
+			} else if (args[i].equals("--query-archive")) {
+				records = args[++i];
+			} else {
+				moves = args[i];
+			}
+		}
+		if (records == null) {
+			System.out.println("Usage: --query-archive RECORDS [--index FILE] [MOVES]");
+			return;
+		}
+		GameArchive archive = new GameArchive(new File(records),
+				new File(index == null ? defaultIndexName(records) : index));
+		GameLogic position = archive.newGame();
+		String[] columns = moves.indexOf(',') >= 0 ? moves.split(",") : moves.split("");
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i].length() > 0 && !position.play(Integer.parseInt(columns[i].trim()))) {
+				System.out.println("Column " + columns[i] + " is full");
+				return;
+			}
+		}
+		long start = System.nanoTime();
+		PositionStats stats = archive.query(position);
+		long micros = (System.nanoTime() - start) / 1000;
+		System.out.print(stats);
+		System.out.println(String.format("%d index entries, query took %d us", archive.size(), micros));
+	}
+
+	public static String defaultIndexName(String recordsFile) {
+		return recordsFile + ".idx";
+	}
+
+	public int getXLen() {
+		return xLen;
+	}
+
+	public int getYLen() {
+		return yLen;
+	}
+
+	public int getWinningLength() {
+		return winningLength;
+	}
+
+	public long size() {
+		return count;
+	}
+
+	public GameLogic newGame() {
+		return new GameLogic(xLen, yLen, winningLength);
+	}
+
+	/* FUNC: query(GameLogic) -> PositionStats
+	 * DESC:
+	 * 	how often the position was reached and how the games went on from it,
+	 * 	its mirror image counts too with the columns mirrored back
+	 */
+	public PositionStats query(GameLogic position) {
+		PositionStats stats = new PositionStats(xLen);
+		if (position.getXLen() != xLen || position.getYLen() != yLen ||
+				position.getWinningSize() != winningLength) {
+			return stats;
+		}
+		long key = position.getCanonicalKey();
+		for (long i = lowerBound(key); i < count && keyAt(i) == key; i++) {
+			long counts = countsAt(i);
+			int column = (int) (counts >>> 2) & END_COLUMN;
+			int result = (int) counts & 3;
+			stats.add(column == END_COLUMN ? -1 : position.canonicalColumn(column), result,
+					counts >>> 16, gameAt(i));
+		}
+		return stats;
+	}
+
+	/* FUNC: readGame(long, GameRecord) -> void
+	 * DESC:
+	 * 	read one game of the records file, at an offset the index gave out
+	 */
+	public void readGame(long offset, GameRecord record) throws IOException {
+		GameRecordReader reader = new GameRecordReader(new FileInputStream(recordsFile).getChannel());
+		try {
+			reader.seek(offset);
+			if (!reader.next(record)) {
+				throw new IOException("No game at " + offset);
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/* FUNC: lowerBound(long) -> long
+	 * DESC:
+	 * 	binary search of the mapped entries
+	 * RET:
+	 * 	index of the first entry with the key or a bigger one
+	 */
+	private long lowerBound(long key) {
+		long low = 0;
+		long high = count;
+		while (low < high) {
+			long mid = (low + high) >>> 1;
+			if (keyAt(mid) < key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private long keyAt(long entry) {
+		return segments[(int) (entry / SEGMENT_ENTRIES)].getLong((int) (entry % SEGMENT_ENTRIES) * ENTRY_SIZE);
+	}
+
+	private long countsAt(long entry) {
+		return segments[(int) (entry / SEGMENT_ENTRIES)].getLong((int) (entry % SEGMENT_ENTRIES) * ENTRY_SIZE + 8);
+	}
+
+	private long gameAt(long entry) {
+		return segments[(int) (entry / SEGMENT_ENTRIES)].getLong((int) (entry % SEGMENT_ENTRIES) * ENTRY_SIZE + 16);
+	}
+}
@@ -0,0 +1,322 @@
+package com.game.connect4;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * This is the Game Archive Builder class,
+ * indexes every position of a GameRecord file, see GameArchive for the layout.
+ * The games are replayed through GameLogic in one streaming pass. Positions are
+ * collected in a fixed size buffer which is sorted, merged and written out as a
+ * run file whenever it fills up, then the runs are merged into the index, so
+ * the heap only ever holds one buffer whatever the size of the archive
+ *
+ * Usage: --build-archive RECORDS [--index FILE] [--run-entries N]
+ *
+ * @author Yufan Lu
+ */
+public class GameArchiveBuilder {
+	private final static int STREAM_BUFFER = 1 << 16;
+
+	// Settings
+	private int runEntries = 1 << 22;
+
+	// The run being collected: key, games << 16 | column << 2 | result, first game offset
+	private long[] keys;
+	private long[] counts;
+	private long[] games;
+	private int size;
+	private final List<File> runs = new ArrayList<File>();
+
+	public static void main(String[] args) throws IOException {
+		GameArchiveBuilder builder = new GameArchiveBuilder();
+		String records = null;
+		String index = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--build-archive")) {
+				records = args[++i];
+			} else if (args[i].equals("--index")) {
+				index = args[++i];
+			} else if (args[i].equals("--run-entries")) {
+				builder.runEntries = Integer.parseInt(args[++i]);
+			} else {
+				System.out.println("Unknown option " + args[i]);
+				return;
+			}
+		}
+		if (records == null) {
+			System.out.println("Usage: --build-archive RECORDS [--index FILE] [--run-entries N]");
+			return;
+		}
+		if (index == null) {
+			index = GameArchive.defaultIndexName(records);
+		}
+		long start = System.nanoTime();
+		long entries = builder.build(new File(records), new File(index));
+		System.out.println(String.format("Wrote %d index entries to %s in %.1fs",
+				entries, index, (System.nanoTime() - start) / 1e9));
+	}
+
+	/* FUNC: build(File, File) -> long
+	 * DESC:
+	 * 	index a records file
+	 * RET:
+	 * 	number of index entries written
+	 */
+	public long build(File records, File index) throws IOException {
+		keys = new long[runEntries];
+		counts = new long[runEntries];
+		games = new long[runEntries];
+		size = 0;
+		GameRecordReader reader = new GameRecordReader(new FileInputStream(records).getChannel());
+		int xLen = reader.getXLen();
+		if (xLen > GameArchive.END_COLUMN) {
+			reader.close();
+			throw new IOException("Boards wider than " + GameArchive.END_COLUMN + " columns can't be indexed");
+		}
+		try {
+			GameRecord record = new GameRecord();
+			GameLogic game = reader.newGame();
+			long offset = reader.getPosition();
+			while (reader.next(record)) {
+				int result = record.getResult();
+				game.reset();
+				for (int i = 0; i < record.getMoveCount(); i++) {
+					int column = record.getMove(i);
+					add(game.getCanonicalKey(), game.canonicalColumn(column), result, offset);
+					if (!game.play(column)) {
+						throw new IOException("Game at " + offset + " plays into a full column");
+					}
+				}
+				add(game.getCanonicalKey(), GameArchive.END_COLUMN, result, offset);
+				offset = reader.getPosition();
+			}
+			if (size > 0 || runs.isEmpty()) {
+				writeRun();
+			}
+			keys = null;
+			counts = null;
+			games = null;
+			return merge(index, xLen, reader.getYLen(), reader.getWinningLength());
+		} finally {
+			reader.close();
+			for (int i = 0; i < runs.size(); i++) {
+				runs.get(i).delete();
+			}
+			runs.clear();
+		}
+	}
+
+	private void add(long key, int column, int result, long offset) throws IOException {
+		if (size == keys.length) {
+			writeRun();
+		}
+		keys[size] = key;
+		counts[size] = (1L << 16) | (column << 2) | result;
+		games[size] = offset;
+		size++;
+	}
+
+	/* FUNC: writeRun() -> void
+	 * DESC:
+	 * 	sort the buffer, fold equal entries together and write it to a temporary run file
+	 */
+	private void writeRun() throws IOException {
+		sort(0, size - 1);
+		File run = File.createTempFile("archive-run-", ".bin");
+		run.deleteOnExit();
+		runs.add(run);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), STREAM_BUFFER));
+		try {
+			int i = 0;
+			while (i < size) {
+				long total = counts[i];
+				long first = games[i];
+				int j = i + 1;
+				while (j < size && keys[j] == keys[i] && (counts[j] & 0xFFFF) == (counts[i] & 0xFFFF)) {
+					total += counts[j] & ~0xFFFFL;
+					first = Math.min(first, games[j]);
+					j++;
+				}
+				out.writeLong(keys[i]);
+				out.writeLong(total);
+				out.writeLong(first);
+				i = j;
+			}
+		} finally {
+			out.close();
+		}
+		size = 0;
+	}
+
+	/* FUNC: merge(File, int, int, int) -> long
+	 * DESC:
+	 * 	k-way merge of the sorted runs into the index, folding equal entries again
+	 */
+	private long merge(File index, int xLen, int yLen, int winningLength) throws IOException {
+		PriorityQueue<RunCursor> queue = new PriorityQueue<RunCursor>(Math.max(1, runs.size()), new Comparator<RunCursor>() {
+			@Override
+			public int compare(RunCursor a, RunCursor b) {
+				return compareEntries(a.key, a.counts, b.key, b.counts);
+			}
+		});
+		List<RunCursor> cursors = new ArrayList<RunCursor>();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(index), STREAM_BUFFER));
+		long written = 0;
+		try {
+			for (int i = 0; i < runs.size(); i++) {
+				RunCursor cursor = new RunCursor(runs.get(i));
+				cursors.add(cursor);
+				if (cursor.advance()) {
+					queue.add(cursor);
+				}
+			}
+			// the count is patched in once it's known
+			out.writeInt(GameArchive.MAGIC);
+			out.writeInt(GameArchive.VERSION);
+			out.writeInt(xLen);
+			out.writeInt(yLen);
+			out.writeInt(winningLength);
+			out.writeInt(0);
+			out.writeLong(0L);
+			for (int i = 32; i < GameArchive.HEADER_SIZE; i++) {
+				out.writeByte(0);
+			}
+			while (!queue.isEmpty()) {
+				RunCursor cursor = queue.poll();
+				long key = cursor.key;
+				long total = cursor.counts;
+				long first = cursor.game;
+				if (cursor.advance()) {
+					queue.add(cursor);
+				}
+				while (!queue.isEmpty() && queue.peek().key == key &&
+						(queue.peek().counts & 0xFFFF) == (total & 0xFFFF)) {
+					RunCursor same = queue.poll();
+					total += same.counts & ~0xFFFFL;
+					first = Math.min(first, same.game);
+					if (same.advance()) {
+						queue.add(same);
+					}
+				}
+				out.writeLong(key);
+				out.writeLong(total);
+				out.writeLong(first);
+				written++;
+			}
+		} finally {
+			out.close();
+			for (int i = 0; i < cursors.size(); i++) {
+				cursors.get(i).close();
+			}
+		}
+		RandomAccessFile raf = new RandomAccessFile(index, "rw");
+		try {
+			raf.seek(24);
+			raf.writeLong(written);
+		} finally {
+			raf.close();
+		}
+		return written;
+	}
+
+	/* FUNC: compareEntries(long, long, long, long) -> int
+	 * DESC:
+	 * 	index order: by key, then by column and result
+	 */
+	private static int compareEntries(long keyA, long countsA, long keyB, long countsB) {
+		if (keyA != keyB) {
+			return keyA < keyB ? -1 : 1;
+		}
+		long codeA = countsA & 0xFFFF;
+		long codeB = countsB & 0xFFFF;
+		return codeA < codeB ? -1 : (codeA == codeB ? 0 : 1);
+	}
+
+	/* FUNC: sort(int, int) -> void
+	 * DESC:
+	 * 	quicksort of the buffer in index order, moving the three arrays together
+	 */
+	private void sort(int low, int high) {
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			long pivotKey = keys[mid];
+			long pivotCounts = counts[mid];
+			int i = low;
+			int j = high;
+			while (i <= j) {
+				while (compareEntries(keys[i], counts[i], pivotKey, pivotCounts) < 0) {
+					i++;
+				}
+				while (compareEntries(keys[j], counts[j], pivotKey, pivotCounts) > 0) {
+					j--;
+				}
+				if (i <= j) {
+					swap(i++, j--);
+				}
+			}
+			// recurse into the smaller half, loop on the bigger one
+			if (j - low < high - i) {
+				sort(low, j);
+				low = i;
+			} else {
+				sort(i, high);
+				high = j;
+			}
+		}
+	}
+
+	private void swap(int a, int b) {
+		long key = keys[a];
+		keys[a] = keys[b];
+		keys[b] = key;
+		long count = counts[a];
+		counts[a] = counts[b];
+		counts[b] = count;
+		long game = games[a];
+		games[a] = games[b];
+		games[b] = game;
+	}
+
+	/**
+	 * Reads one sorted run back, an entry at a time
+	 */
+	private static final class RunCursor {
+		private final DataInputStream in;
+		private long remaining;
+		long key;
+		long counts;
+		long game;
+
+		RunCursor(File run) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), STREAM_BUFFER));
+			remaining = run.length() / GameArchive.ENTRY_SIZE;
+		}
+
+		boolean advance() throws IOException {
+			if (remaining == 0) {
+				return false;
+			}
+			remaining--;
+			key = in.readLong();
+			counts = in.readLong();
+			game = in.readLong();
+			return true;
+		}
+
+		void close() throws IOException {
+			in.close();
+		}
+	}
+}
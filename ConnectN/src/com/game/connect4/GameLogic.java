@@ -1,40 +1,193 @@
 package com.game.connect4;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * This is the Game Logic class,
- * the high level logic and game state
+ * the high level logic and game state.
+ * The discs are kept in a {@link BitBoard}, cell (x, y) is bit x * yLen + y,
+ * see SparseGameLogic for boards too big to keep dense
  * 
  * @author Yufan Lu
  */
-public class GameLogic {
+public class GameLogic implements GameState {
 	// Constants
 	public final static int GRID_EMPTY = 0;
 	public final static int GRID_FIRST_PLAYER = 1;
 	public final static int GRID_SECOND_PLAYER = 2;
 	public final static int GRID_PLACEABLE = 3;
+	public final static int STATUS_ONGOING = 0;
+	public final static int STATUS_WIN = 1;
+	public final static int STATUS_DRAW = 2;
 	private final int winningSize;
+	// The four line directions, each line is walked both ways from the placed disc
 	private static final int[][] DIRECTION = { 
-		{ -1, +1 }, { 0, +1 }, { +1, +1 },
-		{ -1,  0 },            { +1,  0 },
-		{ -1, -1 }, { 0, -1 }, { +1, -1 }
+		{ +1,  0 }, { 0, +1 }, { +1, +1 }, { +1, -1 }
 	};
 	
 	// Game related variables
+	private final int xLen;
+	private final int yLen;
 	private boolean isFirstPlayer;
-	private int[][] grids;
+	private BitBoard board;
+	// Number of discs in each column, the next disc of column x lands on row heights[x]
+	private int[] heights;
+	// Bit x is set while column x has room, only kept for boards up to 64 columns
+	private long playableMask;
+	// Columns played so far, used by undo()
+	private int[] moves;
+	private int moveCount;
+	// Set while a snapshot shares the arrays, they're copied before the next write.
+	// play() only writes moves past every snapshot's end, so only undo() and reset() copy them
+	private boolean boardShared;
+	private boolean movesShared;
+	// Last snapshot taken, handed out again until the position changes
+	private BoardSnapshot snapshot;
+	// Zobrist hash of the position, the high word is only kept for boards over 64 cells
+	private final ZobristKeys keys;
+	// Every line a player could win with, shared by all games of the size
+	private final WinningLines lines;
+	// Lines before this one are known to hold discs of both players
+	private int openLineHint;
+	// The open line isDeadPosition() found last time, it usually stays open a while
+	private int lastOpenLine;
+	private long hash;
+	private long hashHigh;
+	// Hash of the left-right mirrored position, kept alongside
+	private long mirrorHash;
+	private long mirrorHashHigh;
 
-	// Used to keep the four line track
+	// The winner and the run that made it, the track is only built when asked for
+	private int winnerMark;
+	private int winPly;
+	private int winStartX;
+	private int winStartY;
+	private int winDirection;
+	private int winLength;
 	private List<MyPoint<Integer> > winningTrack;
 	
 	public List<MyPoint<Integer> > GetWinningTrack() {
+		if (winnerMark != -1 && winningTrack.isEmpty()) {
+			for (int i = 0; i < winLength; i++) {
+				MyPoint<Integer> p = new MyPoint<Integer>();
+				p.posX = winStartX + DIRECTION[winDirection][0] * i;
+				p.posY = winStartY + DIRECTION[winDirection][1] * i;
+				winningTrack.add(p);
+			}
+		}
 		return winningTrack;
 	}
 	
+	/* FUNC: getGrid(int, int) -> int
+	 * DESC:
+	 * 	read one grid, the lowest empty grid of a column reads as GRID_PLACEABLE
+	 */
 	public int getGrid(int x, int y) {
-		return grids[x][y];
+		if (heights[x] == y) {
+			return GRID_PLACEABLE;
+		}
+		return board.get(x * yLen + y);
+	}
+
+	public int getColumnHeight(int x) {
+		return heights[x];
+	}
+
+	public boolean isPlayable(int x) {
+		return heights[x] < yLen;
+	}
+
+	public int getMoveCount() {
+		return moveCount;
+	}
+
+	public int getMove(int ply) {
+		return moves[ply];
+	}
+
+	public int getCurrentPlayer() {
+		return isFirstPlayer ? GRID_FIRST_PLAYER : GRID_SECOND_PLAYER;
+	}
+
+	public long getHash() {
+		return hash;
+	}
+
+	public long getHashHigh() {
+		return hashHigh;
+	}
+
+	/* FUNC: getKey() -> long
+	 * DESC:
+	 * 	64 bit key of the position, folding in the high hash word on big boards
+	 */
+	public long getKey() {
+		return hash ^ hashHigh;
+	}
+
+	/* FUNC: getMirrorKey() -> long
+	 * DESC:
+	 * 	key of the position mirrored left to right
+	 */
+	public long getMirrorKey() {
+		return mirrorHash ^ mirrorHashHigh;
+	}
+
+	/* FUNC: getCanonicalKey() -> long
+	 * DESC:
+	 * 	the smaller of the key and the mirrored key, so a position and its
+	 * 	mirror image share one entry in caches and books
+	 */
+	public long getCanonicalKey() {
+		long key = hash ^ hashHigh;
+		long mirrorKey = mirrorHash ^ mirrorHashHigh;
+		return mirrorKey < key ? mirrorKey : key;
+	}
+
+	/* FUNC: isMirrored() -> boolean
+	 * DESC:
+	 * 	whether getCanonicalKey() is the key of the mirrored position,
+	 * 	columns stored under it have to go through mirrorColumn()
+	 */
+	public boolean isMirrored() {
+		return (mirrorHash ^ mirrorHashHigh) < (hash ^ hashHigh);
+	}
+
+	public int mirrorColumn(int column) {
+		return xLen - 1 - column;
+	}
+
+	/* FUNC: canonicalColumn(int) -> int
+	 * DESC:
+	 * 	map a column between this position and the side getCanonicalKey() stands for,
+	 * 	mirroring is its own inverse so the same call maps both ways
+	 * RET:
+	 * 	the mapped column, negative columns stay as they are
+	 */
+	public int canonicalColumn(int column) {
+		return column < 0 || !isMirrored() ? column : xLen - 1 - column;
+	}
+
+	public int getXLen() {
+		return xLen;
+	}
+
+	public int getYLen() {
+		return yLen;
+	}
+
+	public int getWinningSize() {
+		return winningSize;
+	}
+
+	public WinningLines getLines() {
+		return lines;
+	}
+
+	public BitBoard getBoard() {
+		return board;
 	}
 
 	/*
@@ -47,32 +200,124 @@ public class GameLogic {
 	 * 	winningRequiredSize -- the winning condition
 	 */
 	public GameLogic(int xLen, int yLen, int winningRequiredSize) {
+		this.xLen = xLen;
+		this.yLen = yLen;
 		winningSize = winningRequiredSize;
 		isFirstPlayer = true;
+		winnerMark = -1;
 		winningTrack = new ArrayList<MyPoint<Integer> >();
-		grids = new int[xLen][yLen];
-		for (int i = 0; i < xLen; i++) {
-			for (int j = 0; j < yLen; j++) {
-				grids[i][j] = GRID_EMPTY;
-			}
-		}
+		board = BitBoard.create(xLen * yLen);
+		heights = new int[xLen];
+		playableMask = xLen >= 64 ? -1L : (1L << xLen) - 1;
+		moves = new int[xLen * yLen];
+		moveCount = 0;
+		keys = ZobristKeys.forSize(xLen, yLen);
+		lines = WinningLines.forSize(xLen, yLen, winningSize);
+		lastOpenLine = -1;
+		hash = 0L;
+		hashHigh = 0L;
+		mirrorHash = 0L;
+		mirrorHashHigh = 0L;
+	}
+
+	/*
+	 * FUNC: Constructor(GameLogic)
+	 * DESC:
+	 * 	copy a position, the board itself is just a couple of word copies
+	 * ARGS:
+	 * 	other -- the position to copy
+	 */
+	public GameLogic(GameLogic other) {
+		xLen = other.xLen;
+		yLen = other.yLen;
+		winningSize = other.winningSize;
+		isFirstPlayer = other.isFirstPlayer;
+		winnerMark = other.winnerMark;
+		winPly = other.winPly;
+		winStartX = other.winStartX;
+		winStartY = other.winStartY;
+		winDirection = other.winDirection;
+		winLength = other.winLength;
+		winningTrack = new ArrayList<MyPoint<Integer> >();
+		board = other.board.copy();
+		heights = other.heights.clone();
+		playableMask = other.playableMask;
+		moves = other.moves.clone();
+		moveCount = other.moveCount;
+		keys = other.keys;
+		lines = other.lines;
+		openLineHint = other.openLineHint;
+		lastOpenLine = other.lastOpenLine;
+		hash = other.hash;
+		hashHigh = other.hashHigh;
+		mirrorHash = other.mirrorHash;
+		mirrorHashHigh = other.mirrorHashHigh;
 	}
 	
+	/* FUNC: reset() -> void
+	 * DESC:
+	 * 	go back to the empty board without allocating, for running many games on one object
+	 */
+	public void reset() {
+		snapshot = null;
+		if (boardShared) {
+			board = BitBoard.create(xLen * yLen);
+			heights = new int[xLen];
+			boardShared = false;
+		} else {
+			board.reset();
+			Arrays.fill(heights, 0);
+		}
+		if (movesShared) {
+			moves = new int[xLen * yLen];
+			movesShared = false;
+		}
+		playableMask = xLen >= 64 ? -1L : (1L << xLen) - 1;
+		moveCount = 0;
+		isFirstPlayer = true;
+		winnerMark = -1;
+		winningTrack.clear();
+		openLineHint = 0;
+		lastOpenLine = -1;
+		hash = 0L;
+		hashHigh = 0L;
+		mirrorHash = 0L;
+		mirrorHashHigh = 0L;
+	}
+
 	/* FUNC: markPlaceable() -> void
 	 * DESC:
-	 * 	mark the grids that can be placed with next unit
+	 * 	placeable grids are derived from the column heights now,
+	 * 	kept so the screens can still call it
 	 */
 	public void markPlaceable() {
-		for (int i = 0; i < grids.length; i++) {
-			for (int j = 0; j < grids[i].length; j++) {
-				if (grids[i][j] == GRID_EMPTY) {
-					grids[i][j] = GRID_PLACEABLE;
-					break;
-				} else if (grids[i][j] == GRID_PLACEABLE) {
-					break;
-				}
+	}
+
+	/* FUNC: playableColumns() -> long
+	 * DESC:
+	 * 	bitmask of the columns that still have room,
+	 * 	only meaningful for boards up to 64 columns, see playableColumns(int[])
+	 */
+	public long playableColumns() {
+		return playableMask;
+	}
+
+	/* FUNC: playableColumns(int[]) -> int
+	 * DESC:
+	 * 	list the columns that still have room, for boards of any width
+	 * ARG:
+	 * 	out -- receives the column indexes, needs room for xLen entries
+	 * RET:
+	 * 	number of playable columns written
+	 */
+	public int playableColumns(int[] out) {
+		int count = 0;
+		for (int i = 0; i < xLen; i++) {
+			if (heights[i] < yLen) {
+				out[count++] = i;
 			}
 		}
+		return count;
 	}
 
 	/* FUNC: clickGrid(int, int) -> boolean
@@ -82,74 +327,258 @@ public class GameLogic {
 	 * 	xIndex -- x index
 	 * 	yIndex -- y index
 	 * RET:
-	 * 	whether current grid is clickable
+	 * 	whether current grid is clickable, false for a cell off the board
 	 */
 	public boolean clickGrid(int xIndex, int yIndex) {
-		if (grids[xIndex][yIndex] == GRID_PLACEABLE) {
-			grids[xIndex][yIndex] = isFirstPlayer ? GRID_FIRST_PLAYER : GRID_SECOND_PLAYER;
-			isFirstPlayer = !isFirstPlayer;
-			markPlaceable();
+		if (xIndex >= 0 && xIndex < xLen && heights[xIndex] == yIndex && yIndex < yLen) {
+			play(xIndex);
 			return true;
 		}
 		return false;
 	}
 
-	/* FUNC: checkEightDirection(int, int) -> boolean
+	/* FUNC: play(int) -> boolean
 	 * DESC:
-	 * 	start from current xy grid, check if there's a four same continuous grids,
-	 * 	if so, store the path into the winningTrack variable
+	 * 	drop a disc of the player to move into the column,
+	 * 	constant time and no allocation, so search can call it freely
 	 * ARG:
-	 * 	xIndex -- x index
-	 * 	yIndex -- y index
+	 * 	column -- x index
 	 * RET:
-	 * 	whether there's a four same continuous grids
+	 * 	false if the column is full or off the board
 	 */
-	private boolean checkEightDirection(int xIndex, int yIndex) {
-		int startGridMark = grids[xIndex][yIndex];
-		if (startGridMark != GRID_FIRST_PLAYER && startGridMark != GRID_SECOND_PLAYER) {
+	public boolean play(int column) {
+		if (column < 0 || column >= xLen) {
 			return false;
 		}
-		MyPoint<Integer> p;
-		for (int i = 0; i < 8; i++) {
-			int count = 1;
+		int row = heights[column];
+		if (row >= yLen) {
+			return false;
+		}
+		if (boardShared) {
+			unshareBoard();
+		}
+		snapshot = null;
+		int mark = isFirstPlayer ? GRID_FIRST_PLAYER : GRID_SECOND_PLAYER;
+		int cell = column * yLen + row;
+		board.set(mark, cell);
+		updateHash(mark, cell, (xLen - 1 - column) * yLen + row);
+		if (winnerMark == -1 && checkLines(column, row, mark)) {
+			winnerMark = mark;
+			winPly = moveCount;
+		}
+		isFirstPlayer = !isFirstPlayer;
+		if (++heights[column] == yLen && column < 64) {
+			playableMask &= ~(1L << column);
+		}
+		moves[moveCount++] = column;
+		return true;
+	}
+
+	/* FUNC: undo() -> boolean
+	 * DESC:
+	 * 	take back the last move, restoring the side to move,
+	 * 	the column height and the winner
+	 * RET:
+	 * 	false if there's no move to take back
+	 */
+	public boolean undo() {
+		if (moveCount == 0) {
+			return false;
+		}
+		if (boardShared) {
+			unshareBoard();
+		}
+		if (movesShared) {
+			moves = moves.clone();
+			movesShared = false;
+		}
+		snapshot = null;
+		int column = moves[--moveCount];
+		int row = --heights[column];
+		if (column < 64) {
+			playableMask |= 1L << column;
+		}
+		isFirstPlayer = !isFirstPlayer;
+		int mark = isFirstPlayer ? GRID_FIRST_PLAYER : GRID_SECOND_PLAYER;
+		int cell = column * yLen + row;
+		board.clear(mark, cell);
+		updateHash(mark, cell, (xLen - 1 - column) * yLen + row);
+		if (winnerMark != -1 && winPly == moveCount) {
+			winnerMark = -1;
 			winningTrack.clear();
-			p = new MyPoint<Integer>();
-			p.posX = xIndex; p.posY = yIndex;
-			winningTrack.add(p);
-			for (int j = 1; j < winningSize; j++) {
-				int newX = xIndex + DIRECTION[i][0] * j;
-				int newY = yIndex + DIRECTION[i][1] * j;
-				if (!(newX >= 0 && newX < grids.length) ||
-					!(newY >= 0 && newY < grids[newX].length) ||
-					grids[newX][newY] != startGridMark) {
-					break;
-				}
-				p = new MyPoint<Integer>();
-				p.posX = newX; p.posY = newY;
-				winningTrack.add(p);
-				count++;
+		}
+		// lines through the cell may be open again, the first of them has the lowest id
+		if (lines.cellLineStart[cell] < lines.cellLineStart[cell + 1]) {
+			openLineHint = Math.min(openLineHint, lines.cellLines[lines.cellLineStart[cell]]);
+		}
+		return true;
+	}
+
+	/* FUNC: snapshot() -> BoardSnapshot
+	 * DESC:
+	 * 	an immutable view of the current position for other threads to read.
+	 * 	It shares the board with this game, the first change after it copies
+	 * 	the board words and the column heights, so a snapshot per move costs one copy
+	 */
+	public BoardSnapshot snapshot() {
+		if (snapshot == null) {
+			snapshot = new BoardSnapshot(this, board, heights, moves);
+			boardShared = true;
+			movesShared = true;
+		}
+		return snapshot;
+	}
+
+	private void unshareBoard() {
+		board = board.copy();
+		heights = heights.clone();
+		boardShared = false;
+	}
+
+	/* FUNC: updateHash(int, int, int) -> void
+	 * DESC:
+	 * 	toggle a disc and the side to move in the hash and the mirrored hash,
+	 * 	the same call undoes it
+	 * ARG:
+	 * 	mark       -- the disc's player
+	 * 	cell       -- the disc's cell
+	 * 	mirrorCell -- the same cell mirrored left to right
+	 */
+	private void updateHash(int mark, int cell, int mirrorCell) {
+		if (mark == GRID_FIRST_PLAYER) {
+			hash ^= keys.first[cell] ^ keys.side;
+			mirrorHash ^= keys.first[mirrorCell] ^ keys.side;
+		} else {
+			hash ^= keys.second[cell] ^ keys.side;
+			mirrorHash ^= keys.second[mirrorCell] ^ keys.side;
+		}
+		if (keys.isWide()) {
+			if (mark == GRID_FIRST_PLAYER) {
+				hashHigh ^= keys.firstHigh[cell] ^ keys.sideHigh;
+				mirrorHashHigh ^= keys.firstHigh[mirrorCell] ^ keys.sideHigh;
+			} else {
+				hashHigh ^= keys.secondHigh[cell] ^ keys.sideHigh;
+				mirrorHashHigh ^= keys.secondHigh[mirrorCell] ^ keys.sideHigh;
 			}
-			if (count == winningSize) {
+		}
+	}
+
+	/* FUNC: checkLines(int, int, int) -> boolean
+	 * DESC:
+	 * 	look at the lines through the disc just placed, if one of them is
+	 * 	long enough, remember the run for the winningTrack.
+	 * 	Boards up to 64 cells test the precomputed line masks through the cell,
+	 * 	bigger boards walk the four directions
+	 * ARG:
+	 * 	xIndex -- x index
+	 * 	yIndex -- y index
+	 * 	mark   -- the player who placed the disc
+	 * RET:
+	 * 	whether the disc completes a winning line
+	 */
+	private boolean checkLines(int xIndex, int yIndex, int mark) {
+		if (lines.masks != null) {
+			int line = lines.completedLine(board, mark, xIndex * yLen + yIndex);
+			return line >= 0 && checkRun(xIndex, yIndex, mark, lines.lineDirection[line]);
+		}
+		for (int i = 0; i < 4; i++) {
+			if (checkRun(xIndex, yIndex, mark, i)) {
 				return true;
 			}
 		}
 		return false;
 	}
 
+	/* FUNC: checkRun(int, int, int, int) -> boolean
+	 * DESC:
+	 * 	count the player's discs both ways from a cell along one direction,
+	 * 	if the run is long enough, remember it for the winningTrack
+	 * RET:
+	 * 	whether the run is a winning line
+	 */
+	private boolean checkRun(int xIndex, int yIndex, int mark, int direction) {
+		int dx = DIRECTION[direction][0];
+		int dy = DIRECTION[direction][1];
+		int back = 0;
+		int newX = xIndex - dx;
+		int newY = yIndex - dy;
+		while (newX >= 0 && newX < xLen && newY >= 0 && newY < yLen &&
+				board.isSet(mark, newX * yLen + newY)) {
+			back++;
+			newX -= dx;
+			newY -= dy;
+		}
+		int forward = 0;
+		newX = xIndex + dx;
+		newY = yIndex + dy;
+		while (newX >= 0 && newX < xLen && newY >= 0 && newY < yLen &&
+				board.isSet(mark, newX * yLen + newY)) {
+			forward++;
+			newX += dx;
+			newY += dy;
+		}
+		if (back + forward + 1 < winningSize) {
+			return false;
+		}
+		winStartX = xIndex - dx * back;
+		winStartY = yIndex - dy * back;
+		winDirection = direction;
+		winLength = back + forward + 1;
+		winningTrack.clear();
+		return true;
+	}
+
 	/* FUNC: winner() -> int
 	 * DESC:
-	 * 	check the winner
+	 * 	check the winner, kept up to date by clickGrid
 	 * RET:
 	 * 	return winner's index, if no winner return -1
 	 */
 	public int winner() {
-		for (int i = 0; i < grids.length; i++) {
-			for (int j = 0; j < grids[i].length; j++) {
-				if (checkEightDirection(i, j)) {
-					return grids[i][j];
-				}
+		return winnerMark;
+	}
+
+	/* FUNC: status() -> int
+	 * DESC:
+	 * 	state of the game
+	 * RET:
+	 * 	STATUS_WIN if someone has won, STATUS_DRAW if the board is full without a winner,
+	 * 	STATUS_ONGOING otherwise
+	 */
+	public int status() {
+		if (winnerMark != -1) {
+			return STATUS_WIN;
+		}
+		return moveCount == xLen * yLen ? STATUS_DRAW : STATUS_ONGOING;
+	}
+
+	/* FUNC: isDeadPosition() -> boolean
+	 * DESC:
+	 * 	whether every winning line holds discs of both players, so nobody can win
+	 * 	any more and the game can only end in a draw.
+	 * 	Early positions are ruled out by their disc count, then the open line
+	 * 	found last time is tried first. Otherwise, lines only get blocked while
+	 * 	moves are played, so the scan carries on from the first open line found
+	 * 	last time and a whole game costs about one pass over the lines
+	 */
+	public boolean isDeadPosition() {
+		if (moveCount < lines.minDeadDiscs || (lastOpenLine >= 0 && isOpen(lastOpenLine))) {
+			return false;
+		}
+		for (int line = openLineHint; line < lines.lineCount; line++) {
+			if (isOpen(line)) {
+				openLineHint = line;
+				lastOpenLine = line;
+				return false;
 			}
 		}
-		return -1;
+		openLineHint = lines.lineCount;
+		lastOpenLine = -1;
+		return true;
+	}
+
+	private boolean isOpen(int line) {
+		return lines.count(board, GRID_FIRST_PLAYER, line) == 0 ||
+				lines.count(board, GRID_SECOND_PLAYER, line) == 0;
 	}
 }
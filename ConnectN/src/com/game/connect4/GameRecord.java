@@ -0,0 +1,98 @@
+package com.game.connect4;
+
+import java.util.Arrays;
+
+/**
+ * This is the Game Record class,
+ * one finished (or abandoned) game as a list of columns plus its result.
+ * Records are read and written in bulk by GameRecordReader and GameRecordWriter,
+ * which reuse one GameRecord for every game so a scan doesn't allocate.
+ * File layout:
+ * 	header -- magic (4 bytes, big endian), version byte, then varints xLen, yLen, winningLength
+ * 	records, back to back:
+ * 		varint move count, result byte,
+ * 		the columns packed LSB first at bitsPerMove(xLen) bits each, padded to a byte
+ * so a 7 wide game takes 3 bits per move, a 42 move game 18 bytes
+ *
+ * @author Yufan Lu
+ */
+public class GameRecord {
+	// Constants
+	public final static int MAGIC = 0x434E4752;
+	public final static int VERSION = 1;
+	public final static int RESULT_UNFINISHED = 0;
+	public final static int RESULT_FIRST_PLAYER = GameLogic.GRID_FIRST_PLAYER;
+	public final static int RESULT_SECOND_PLAYER = GameLogic.GRID_SECOND_PLAYER;
+	public final static int RESULT_DRAW = 3;
+
+	private int[] moves = new int[64];
+	private int moveCount;
+	private int result;
+
+	public int getMoveCount() {
+		return moveCount;
+	}
+
+	public int getMove(int ply) {
+		return moves[ply];
+	}
+
+	public int getResult() {
+		return result;
+	}
+
+	/* FUNC: set(GameLogic) -> void
+	 * DESC:
+	 * 	take the moves and result of a game, a dead position counts as a draw
+	 */
+	public void set(GameLogic game) {
+		moveCount = 0;
+		for (int i = 0; i < game.getMoveCount(); i++) {
+			add(game.getMove(i));
+		}
+		if (game.status() == GameLogic.STATUS_WIN) {
+			result = game.winner();
+		} else if (game.status() == GameLogic.STATUS_DRAW || game.isDeadPosition()) {
+			result = RESULT_DRAW;
+		} else {
+			result = RESULT_UNFINISHED;
+		}
+	}
+
+	/* FUNC: replay(GameLogic) -> boolean
+	 * DESC:
+	 * 	reset the game and play the recorded moves into it
+	 * RET:
+	 * 	false if a move doesn't fit the board, the game holds the moves before it
+	 */
+	public boolean replay(GameLogic game) {
+		game.reset();
+		for (int i = 0; i < moveCount; i++) {
+			int column = moves[i];
+			if (column < 0 || column >= game.getXLen() || !game.play(column)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	void clear(int newResult) {
+		moveCount = 0;
+		result = newResult;
+	}
+
+	void add(int column) {
+		if (moveCount == moves.length) {
+			moves = Arrays.copyOf(moves, moveCount * 2);
+		}
+		moves[moveCount++] = column;
+	}
+
+	/* FUNC: bitsPerMove(int) -> int
+	 * DESC:
+	 * 	bits a column index takes on a board xLen wide
+	 */
+	public static int bitsPerMove(int xLen) {
+		return Math.max(1, 32 - Integer.numberOfLeadingZeros(xLen - 1));
+	}
+}
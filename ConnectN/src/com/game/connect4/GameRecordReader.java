@@ -0,0 +1,194 @@
+package com.game.connect4;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * This is the Game Record Reader class,
+ * streams game records out of a channel through one reused buffer,
+ * see GameRecord for the layout
+ *
+ * @author Yufan Lu
+ */
+public class GameRecordReader {
+	private final static int BUFFER_SIZE = 1 << 16;
+
+	private final ReadableByteChannel channel;
+	private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private boolean endOfStream;
+	private final int xLen;
+	private final int yLen;
+	private final int winningLength;
+	private final int bitsPerMove;
+	private final int moveMask;
+	// Bytes consumed so far, the offset of the next record once the header is read
+	private long position;
+
+	/*
+	 * FUNC: Constructor(ReadableByteChannel)
+	 * DESC:
+	 * 	open a record stream and read its header
+	 * ARGS:
+	 * 	channel -- where the records come from
+	 */
+	public GameRecordReader(ReadableByteChannel channel) throws IOException {
+		this.channel = channel;
+		buffer.flip();
+		if (!fill(5) || buffer.getInt() != GameRecord.MAGIC || buffer.get() != GameRecord.VERSION) {
+			throw new IOException("Not a game record stream");
+		}
+		position = 5;
+		// varints count themselves into position
+		xLen = readVarint();
+		yLen = readVarint();
+		winningLength = readVarint();
+		if (xLen <= 0 || yLen <= 0) {
+			throw new IOException("Bad board size " + xLen + "x" + yLen);
+		}
+		bitsPerMove = GameRecord.bitsPerMove(xLen);
+		moveMask = (1 << bitsPerMove) - 1;
+	}
+
+	public int getXLen() {
+		return xLen;
+	}
+
+	public int getYLen() {
+		return yLen;
+	}
+
+	public int getWinningLength() {
+		return winningLength;
+	}
+
+	/* FUNC: getPosition() -> long
+	 * DESC:
+	 * 	stream offset of the next record
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/* FUNC: newGame() -> GameLogic
+	 * DESC:
+	 * 	an empty game of the stream's board, to replay records into
+	 */
+	public GameLogic newGame() {
+		return new GameLogic(xLen, yLen, winningLength);
+	}
+
+	/* FUNC: next(GameRecord) -> boolean
+	 * DESC:
+	 * 	read the next record
+	 * ARG:
+	 * 	record -- overwritten with the record
+	 * RET:
+	 * 	false at the end of the stream
+	 */
+	public boolean next(GameRecord record) throws IOException {
+		if (!fill(1)) {
+			return false;
+		}
+		int count = readVarint();
+		if (count < 0 || count > (long) xLen * yLen) {
+			throw new IOException("Bad move count " + count + " at " + position);
+		}
+		int bytes = (int) (((long) count * bitsPerMove + 7) / 8);
+		if (!fill(1 + bytes)) {
+			throw new IOException("Truncated record at " + position);
+		}
+		record.clear(buffer.get());
+		long bits = 0;
+		int bitCount = 0;
+		for (int i = 0; i < count; i++) {
+			while (bitCount < bitsPerMove) {
+				bits |= (long) (buffer.get() & 0xFF) << bitCount;
+				bitCount += 8;
+			}
+			record.add((int) bits & moveMask);
+			bits >>>= bitsPerMove;
+			bitCount -= bitsPerMove;
+		}
+		position += 1 + bytes;
+		return true;
+	}
+
+	/* FUNC: next(GameRecord, GameLogic) -> boolean
+	 * DESC:
+	 * 	read the next record and replay it into the game
+	 * RET:
+	 * 	false at the end of the stream
+	 */
+	public boolean next(GameRecord record, GameLogic game) throws IOException {
+		if (!next(record)) {
+			return false;
+		}
+		if (!record.replay(game)) {
+			throw new IOException("Record before " + position + " has an illegal move");
+		}
+		return true;
+	}
+
+	/* FUNC: seek(long) -> void
+	 * DESC:
+	 * 	jump to a record offset taken from getPosition(), file channels only
+	 */
+	public void seek(long offset) throws IOException {
+		if (!(channel instanceof FileChannel)) {
+			throw new IOException("Only file streams can seek");
+		}
+		((FileChannel) channel).position(offset);
+		buffer.clear();
+		buffer.flip();
+		endOfStream = false;
+		position = offset;
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/* FUNC: fill(int) -> boolean
+	 * DESC:
+	 * 	make sure the buffer holds at least the given number of unread bytes
+	 * RET:
+	 * 	false if the stream ends first
+	 */
+	private boolean fill(int needed) throws IOException {
+		if (buffer.remaining() >= needed) {
+			return true;
+		}
+		if (buffer.capacity() < needed) {
+			ByteBuffer bigger = ByteBuffer.allocate(needed);
+			bigger.put(buffer);
+			buffer = bigger;
+		} else {
+			buffer.compact();
+		}
+		while (buffer.position() < needed && !endOfStream) {
+			if (channel.read(buffer) < 0) {
+				endOfStream = true;
+			}
+		}
+		buffer.flip();
+		return buffer.remaining() >= needed;
+	}
+
+	private int readVarint() throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			if (!fill(1)) {
+				throw new IOException("Truncated record at " + position);
+			}
+			int b = buffer.get();
+			position++;
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Bad varint at " + position);
+	}
+}
@@ -0,0 +1,148 @@
+package com.game.connect4;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * This is the Game Record Writer class,
+ * streams game records into a channel through one reused buffer,
+ * see GameRecord for the layout.
+ * Only whole records are written to the channel, so several writers made
+ * with appendTo() can share one FileChannel, each buffering its own games
+ *
+ * @author Yufan Lu
+ */
+public class GameRecordWriter {
+	private final static int BUFFER_SIZE = 1 << 16;
+
+	private final WritableByteChannel channel;
+	private final int xLen;
+	private final int bitsPerMove;
+	private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private long recordCount;
+	// Reused to turn a GameLogic into a record
+	private final GameRecord scratch = new GameRecord();
+
+	/*
+	 * FUNC: Constructor(WritableByteChannel, int, int, int)
+	 * DESC:
+	 * 	start a new record stream, writing its header
+	 * ARGS:
+	 * 	channel       -- where the records go
+	 * 	xLen          -- x size of every game
+	 * 	yLen          -- y size of every game
+	 * 	winningLength -- the winning condition of every game
+	 */
+	public GameRecordWriter(WritableByteChannel channel, int xLen, int yLen, int winningLength) throws IOException {
+		this(channel, xLen);
+		buffer.putInt(GameRecord.MAGIC);
+		buffer.put((byte) GameRecord.VERSION);
+		putVarint(xLen);
+		putVarint(yLen);
+		putVarint(winningLength);
+		flush();
+	}
+
+	private GameRecordWriter(WritableByteChannel channel, int xLen) {
+		this.channel = channel;
+		this.xLen = xLen;
+		bitsPerMove = GameRecord.bitsPerMove(xLen);
+	}
+
+	/* FUNC: appendTo(WritableByteChannel, int) -> GameRecordWriter
+	 * DESC:
+	 * 	a writer for a stream whose header is already written
+	 */
+	public static GameRecordWriter appendTo(WritableByteChannel channel, int xLen) {
+		return new GameRecordWriter(channel, xLen);
+	}
+
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	/* FUNC: write(GameLogic) -> void
+	 * DESC:
+	 * 	append the moves and result of a game, see GameRecord.set()
+	 */
+	public void write(GameLogic game) throws IOException {
+		scratch.set(game);
+		write(scratch);
+	}
+
+	/* FUNC: write(GameRecord) -> void
+	 * DESC:
+	 * 	append a record
+	 */
+	public void write(GameRecord record) throws IOException {
+		int count = record.getMoveCount();
+		reserve(count);
+		putVarint(count);
+		buffer.put((byte) record.getResult());
+		long bits = 0;
+		int bitCount = 0;
+		for (int i = 0; i < count; i++) {
+			int column = record.getMove(i);
+			if (column < 0 || column >= xLen) {
+				throw new IllegalArgumentException("Column " + column + " is off the board");
+			}
+			bits |= (long) column << bitCount;
+			bitCount += bitsPerMove;
+			while (bitCount >= 8) {
+				buffer.put((byte) bits);
+				bits >>>= 8;
+				bitCount -= 8;
+			}
+		}
+		if (bitCount > 0) {
+			buffer.put((byte) bits);
+		}
+		recordCount++;
+	}
+
+	/* FUNC: flush() -> void
+	 * DESC:
+	 * 	write out every buffered record
+	 */
+	public void flush() throws IOException {
+		buffer.flip();
+		synchronized (channel) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+		buffer.clear();
+	}
+
+	/* FUNC: close() -> void
+	 * DESC:
+	 * 	flush and close the channel, writers sharing a channel only flush
+	 */
+	public void close() throws IOException {
+		flush();
+		channel.close();
+	}
+
+	/* FUNC: reserve(int) -> void
+	 * DESC:
+	 * 	make room for a record of the given length, flushing or growing the buffer
+	 */
+	private void reserve(int moveCount) throws IOException {
+		int size = 5 + 1 + (int) (((long) moveCount * bitsPerMove + 7) / 8);
+		if (buffer.remaining() < size) {
+			flush();
+			if (buffer.capacity() < size) {
+				buffer = ByteBuffer.allocate(size);
+			}
+		}
+	}
+
+	private void putVarint(int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+}
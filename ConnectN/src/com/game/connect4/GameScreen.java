@@ -52,84 +52,170 @@ public class GameScreen implements Screen {
 	private Group buttonGroup;
 
 	private GameLogic gameLogic;
+	// Only made when the computer plays, searches run off the render thread
+	private NegamaxEngine engine;
+	// Bumped whenever the game is left or restarted, so a search still running
+	// for it stops and its result is dropped
+	private volatile int gameNumber;
 	private Drawable[] gridBackground;
 	private ImageButton[][] gridButtons;
 	
-	private Map<Actor, Integer> map;
+	private Map<Actor, MyPoint<Integer> > map;
 	private LabelWithCenter[] winningLabels;
 
 	private ImageButton[] buttons;
 	
-	private int winner;
+	private int status;
 	
 	// The grids' listener
 	private ClickListener buttonListener = new ClickListener() {
 		public void clicked(InputEvent event, float x, float y) {
-			if (winner != -1) {
+			if (status != GameLogic.STATUS_ONGOING || isComputerTurn()) {
 				return;
 			}
 			sfxClickedSound.play(1.0f);
-			int tmp = map.get(event.getListenerActor());
-			final int xIndex = tmp >> 16;
-			final int yIndex = tmp & 0x0000ffff;
-			
-			if (gameLogic.clickGrid(xIndex, yIndex)) {
-				float xpos = gridButtons[xIndex][yIndex].getX();
-				float ypos = gridButtons[xIndex][yIndex].getY();
-				gridButtons[xIndex][yIndex].setY(Gdx.graphics.getHeight());
-				gridButtons[xIndex][yIndex].getStyle().imageUp = gridBackground[gameLogic.getGrid(xIndex, yIndex)];
-				Gdx.input.setInputProcessor(null);
-				gridButtons[xIndex][yIndex].addAction(
-						Actions.sequence(Actions.moveTo(xpos, ypos, 0.5f), Actions.run(new Runnable() {
+			MyPoint<Integer> point = map.get(event.getListenerActor());
+			placeDisc(point.posX, point.posY);
+		}
+	};
+	
+	/* FUNC: placeDisc(int, int) -> void
+	 * DESC:
+	 * 	put the disc of the player to move on the grid and play the drop animation
+	 * ARG:
+	 * 	xIndex -- x index
+	 * 	yIndex -- y index
+	 */
+	private void placeDisc(final int xIndex, final int yIndex) {
+		if (gameLogic.clickGrid(xIndex, yIndex)) {
+			float xpos = gridButtons[xIndex][yIndex].getX();
+			float ypos = gridButtons[xIndex][yIndex].getY();
+			gridButtons[xIndex][yIndex].setY(Gdx.graphics.getHeight());
+			gridButtons[xIndex][yIndex].getStyle().imageUp = gridBackground[gameLogic.getGrid(xIndex, yIndex)];
+			Gdx.input.setInputProcessor(null);
+			gridButtons[xIndex][yIndex].addAction(
+					Actions.sequence(Actions.moveTo(xpos, ypos, 0.5f), Actions.run(new Runnable() {
+				@Override
+				public void run() {
+					status = gameLogic.status();
+					if (status == GameLogic.STATUS_WIN) {
+						final List<MyPoint<Integer> > track = gameLogic.GetWinningTrack();
+						for (int i = 0; i < track.size(); i++) {
+							final MyPoint<Integer> point = track.get(i);
+							gridButtons[point.posX][point.posY].addAction(
+									Actions.sequence(Actions.alpha(0.0f, 0.5f), 
+									Actions.run(new Runnable() {
+										@Override
+										public void run() {
+											gridButtons[point.posX][point.posY].getStyle().imageUp = gridBackground[4];
+										}											
+									}),
+									Actions.sequence(Actions.alpha(1.0f, 0.5f))));
+						}
+						showResult(gameLogic.winner() == GameLogic.GRID_FIRST_PLAYER ?
+								"Winner Is First Player!" : "Winner Is Second Player!");
+					} else if (status == GameLogic.STATUS_DRAW) {
+						showResult("It's a Draw!");
+					}
+					Gdx.input.setInputProcessor(stage);
+					if (status == GameLogic.STATUS_ONGOING && isComputerTurn()) {
+						playComputerMove();
+					}
+				}
+			})));
+			if (yIndex < gridButtons[xIndex].length - 1) {
+				gridButtons[xIndex][yIndex + 1].getStyle().imageUp = 
+						gridBackground[gameLogic.getGrid(xIndex, yIndex + 1)];
+				float upypos = gridButtons[xIndex][yIndex + 1].getY();
+				gridButtons[xIndex][yIndex + 1].setY(ypos);
+				gridButtons[xIndex][yIndex + 1].addAction(Actions.moveTo(xpos, upypos, 0.5f));
+			}
+			updateMap(gameLogic);
+		}
+	}
+	
+	/* FUNC: showResult(String) -> void
+	 * DESC:
+	 * 	fade the board out and show the end of game screen
+	 * ARG:
+	 * 	text -- the result to show
+	 */
+	private void showResult(final String text) {
+		gameGroup.addAction(Actions.sequence(Actions.alpha(0.0f, 5.0f), Actions.run(new Runnable() {
+			@Override
+			public void run() {
+				gameGroup.remove();
+				stage.addActor(winningGroup);
+				stage.addActor(buttonGroup);
+				Gdx.input.setInputProcessor(stage);
+				winningLabels[0].label.setText(text);
+				winningGroup.getColor().a = 0.0f;
+				winningGroup.addAction(Actions.alpha(1.0f, 0.5f));
+			}
+		})));
+	}
+	
+	/* FUNC: isComputerTurn() -> boolean
+	 * DESC:
+	 * 	the computer plays the second player when it was given a thinking time
+	 */
+	private boolean isComputerTurn() {
+		return parentApp.aiMillis > 0 && gameLogic.getCurrentPlayer() == GameLogic.GRID_SECOND_PLAYER;
+	}
+	
+	/* FUNC: playComputerMove() -> void
+	 * DESC:
+	 * 	let the engine pick a column on a worker thread on a copy of the game,
+	 * 	then drop the disc there back on the render thread
+	 */
+	private void playComputerMove() {
+		final GameLogic position = new GameLogic(gameLogic);
+		final NegamaxEngine searcher = engine;
+		final int searchedGame = gameNumber;
+		Thread worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				final SearchResult result;
+				// a restart can start a new search before the old one is done
+				synchronized (searcher) {
+					// a stop left over from an earlier game mustn't end this search,
+					// one for this game comes after the number changed
+					searcher.clearStop();
+					if (searchedGame != gameNumber) {
+						return;
+					}
+					result = searcher.search(position, parentApp.aiMillis, 0, 0);
+				}
+				Gdx.app.postRunnable(new Runnable() {
 					@Override
 					public void run() {
-						winner = gameLogic.winner();
-						if (winner != -1) {
-							final List<MyPoint<Integer> > track = gameLogic.GetWinningTrack();
-							for (int i = 0; i < track.size(); i++) {
-								final MyPoint<Integer> point = track.get(i);
-								gridButtons[point.posX][point.posY].addAction(
-										Actions.sequence(Actions.alpha(0.0f, 0.5f), 
-										Actions.run(new Runnable() {
-											@Override
-											public void run() {
-												gridButtons[point.posX][point.posY].getStyle().imageUp = gridBackground[4];
-											}											
-										}),
-										Actions.sequence(Actions.alpha(1.0f, 0.5f))));
-							}
-							gameGroup.addAction(Actions.sequence(Actions.alpha(0.0f, 5.0f), Actions.run(new Runnable() {
-								@Override
-								public void run() {
-									gameGroup.remove();
-									stage.addActor(winningGroup);
-									stage.addActor(buttonGroup);
-									Gdx.input.setInputProcessor(stage);
-									winningLabels[0].label.setText(winner == 1 ? "Winner Is First Player!" : "Winner Is Second Player!");
-									winningGroup.getColor().a = 0.0f;
-									winningGroup.addAction(Actions.alpha(1.0f, 0.5f));
-								}
-							})));
+						if (searchedGame == gameNumber && result.bestColumn != -1) {
+							placeDisc(result.bestColumn, gameLogic.getColumnHeight(result.bestColumn));
 						}
-						Gdx.input.setInputProcessor(stage);
 					}
-				})));
-				if (yIndex < gridButtons[xIndex].length - 1) {
-					gridButtons[xIndex][yIndex + 1].getStyle().imageUp = 
-							gridBackground[gameLogic.getGrid(xIndex, yIndex + 1)];
-					float upypos = gridButtons[xIndex][yIndex + 1].getY();
-					gridButtons[xIndex][yIndex + 1].setY(ypos);
-					gridButtons[xIndex][yIndex + 1].addAction(Actions.moveTo(xpos, upypos, 0.5f));
-				}
-				updateMap(gameLogic);
+				});
 			}
+		}, "computer-player");
+		worker.setDaemon(true);
+		worker.start();
+	}
+	
+	/* FUNC: stopComputer() -> void
+	 * DESC:
+	 * 	end the computer's search for the current game, if there's one running
+	 */
+	private void stopComputer() {
+		gameNumber++;
+		if (engine != null) {
+			engine.stop();
 		}
-	};
+	}
 	
 	// return and restart listener
 	private ClickListener functionalButtonListener = new ClickListener() {
 		public void clicked(InputEvent event, float x, float y) {
 			if (event.getListenerActor() == buttons[0]) {
+				stopComputer();
 				stage.addAction(Actions.sequence(Actions.alpha(0.0f, 0.5f), Actions.run(new Runnable() {
 					@Override
 					public void run() {
@@ -138,6 +224,7 @@ public class GameScreen implements Screen {
 					}
 				})));
 			} else if (event.getListenerActor() == buttons[1]) {
+				stopComputer();
 				stage.clear();
 				JSONObject gameSetting;
 				gameSetting = new JSONObject(Gdx.files.internal(GAME_SETTING_FILE_NAME).readString());
@@ -146,13 +233,13 @@ public class GameScreen implements Screen {
 		}
 	};
 	
-	/* FUNC: updateMap(GameLogic) -> void
+	/* FUNC: updateMap(GameState) -> void
 	 * DESC:
-	 * 	update the grids according to the GameLogic
+	 * 	update the grids according to the game, dense or sparse
 	 * ARG:
 	 * 	logic -- current game state
 	 */
-	private void updateMap(GameLogic logic) {
+	private void updateMap(GameState logic) {
 		for (int i = 0; i < gridButtons.length; i++) {
 			for (int j = 0; j < gridButtons[i].length; j++) {
 				int gridType = logic.getGrid(i, j);
@@ -208,9 +295,18 @@ public class GameScreen implements Screen {
 		float startingY = (float) setting.getJSONObject("start_pos").getDouble("y");
 		
 		gameLogic = new GameLogic(xLen, yLen, parentApp.winningLength);
+		// the board size stays the same on restarts, so one engine and book do
+		if (parentApp.aiMillis > 0 && engine == null) {
+			engine = new NegamaxEngine();
+			try {
+				engine.setOpeningBook(OpeningBook.openIfPresent(xLen, yLen, parentApp.winningLength));
+			} catch (IOException e) {
+				Gdx.app.error("GameScreen", "Can't read the opening book, the computer plays without it", e);
+			}
+		}
 		gridButtons = new ImageButton[xLen][yLen];
 		
-		map = new HashMap<Actor, Integer>();
+		map = new HashMap<Actor, MyPoint<Integer> >();
 		for (int i = 0; i < xLen; i++) {
 			for (int j = 0; j < yLen; j++) {
 				gridButtons[i][j] = new ImageButton(defaultBackground);
@@ -220,8 +316,10 @@ public class GameScreen implements Screen {
 				gridButtons[i][j].setSize(buttonSizeX, buttonSizeY);
 				gridButtons[i][j].addListener(buttonListener);
 				group.addActor(gridButtons[i][j]);
-				int tmp = (i << 16) | j;
-				map.put(gridButtons[i][j], tmp);
+				MyPoint<Integer> point = new MyPoint<Integer>();
+				point.posX = i;
+				point.posY = j;
+				map.put(gridButtons[i][j], point);
 			}
 		}
 	}
@@ -241,7 +339,7 @@ public class GameScreen implements Screen {
 		gameGroup.addActor(LibGdxUtility.makeBackground(setting.getString("normal_background"), screenWidth, screenHeight));
 		winningGroup.addActor(LibGdxUtility.makeBackground(setting.getString("winning_background"), screenWidth, screenHeight));
 		
-		winner = -1;
+		status = GameLogic.STATUS_ONGOING;
 		
 		gameGroup.getColor().a = 0.0f;
 		gameGroup.addAction(Actions.alpha(1.0f, 1.0f));
@@ -284,6 +382,7 @@ public class GameScreen implements Screen {
 	
 	@Override
 	public void dispose() {
+		stopComputer();
 		spriteBatch.dispose();
 		stage.dispose();
 	}
@@ -303,6 +402,7 @@ public class GameScreen implements Screen {
 
 	@Override
 	public void hide() {
+		stopComputer();
 		Gdx.input.setInputProcessor(null);
 	}
 
@@ -0,0 +1,381 @@
+package com.game.connect4;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This is the Game Server class,
+ * hosts GameSessions for clients on localhost over a line based TCP protocol,
+ * without starting libGDX. Every connection runs on its own thread: a virtual
+ * thread on Java 21 and later, looked up by reflection so the code still builds
+ * for older releases, a pooled platform thread otherwise.
+ * Sessions are owned by a ShardedSessionManager, each one by a single event
+ * loop thread, so any number of connections can join the same game and their
+ * commands reach it without locks
+ *
+ * Protocol, one command per line, every reply ends with a line starting with OK or ERR:
+ * 	NEW [X Y N]  -- start a game, the default board when no size is given -> OK id,
+ * 	                X and Y at most --max-side, N from 2 to the longer of them
+ * 	JOIN id      -- play an existing game -> OK id
+ * 	MOVE column  -- drop a disc for the player to move -> OK status
+ * 	UNDO         -- take the last move back -> OK status
+ * 	STATUS       -- OK status
+ * 	SHOW         -- the board rows top first, then OK status
+ * 	ANALYZE [D]  -- search the game to depth D, or as deep as the time budget allows
+ * 	                -> OK best column, score, depth reached, nodes,
+ * 	                clients asking about the same position share one search, see AnalysisService
+ * 	LEAVE        -- stop playing the current game, which ends with its last client
+ * 	SESSIONS     -- OK number of games being hosted
+ * 	QUIT         -- OK, then the server hangs up
+ * where status is "ONGOING player", "WIN player" or "DRAW", then the move count
+ *
+ * Usage: --serve [--port P] [--board X Y N] [--max-side M] [--max-sessions S] [--shards K]
+ * 	[--analysis-depth D] [--analysis-seconds SECONDS] [--analysis-ttl SECONDS]
+ *
+ * @author Yufan Lu
+ */
+public class GameServer {
+	// Settings
+	private int port = 7777;
+	private int xLen = 7;
+	private int yLen = 6;
+	private int winningLength = 4;
+	private int maxSessions = 100000;
+	private int shardCount = Runtime.getRuntime().availableProcessors();
+	// Deepest ANALYZE allowed, also the default
+	private int maxAnalysisDepth = 12;
+	// Longest an ANALYZE search may take, whatever the depth and board
+	private long analysisBudgetMillis = 2000;
+	private long analysisTtlMillis = 10000;
+	private final static int ANALYSIS_TABLE_MEGABYTES = 16;
+	// Longest side of a board a client may ask for
+	private int maxSide = 16;
+
+	private ShardedSessionManager sessions;
+	private AnalysisService analysis;
+	private final AtomicInteger connections = new AtomicInteger();
+	// Open client sockets, so close() can hang up on them
+	private final Set<Socket> sockets = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+
+	private ServerSocket serverSocket;
+	private ExecutorService executor;
+
+	public static void main(String[] args) throws IOException {
+		GameServer server = new GameServer();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--port")) {
+				server.port = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--board")) {
+				server.xLen = Integer.parseInt(args[++i]);
+				server.yLen = Integer.parseInt(args[++i]);
+				server.winningLength = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--max-side")) {
+				server.maxSide = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--max-sessions")) {
+				server.maxSessions = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--shards")) {
+				server.shardCount = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--analysis-depth")) {
+				server.maxAnalysisDepth = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--analysis-seconds")) {
+				server.analysisBudgetMillis = (long) (Double.parseDouble(args[++i]) * 1000);
+			} else if (args[i].equals("--analysis-ttl")) {
+				server.analysisTtlMillis = (long) (Double.parseDouble(args[++i]) * 1000);
+			} else if (!args[i].equals("--serve")) {
+				System.out.println("Unknown option " + args[i]);
+				return;
+			}
+		}
+		server.start();
+		System.out.println(String.format("Serving %dx%d/%d games on localhost:%d with %s and %d session shards",
+				server.xLen, server.yLen, server.winningLength, server.getPort(), server.getThreadKind(),
+				server.sessions.getShardCount()));
+		server.acceptLoop();
+	}
+
+	/* FUNC: start() -> void
+	 * DESC:
+	 * 	bind the port, acceptLoop() then serves it
+	 */
+	public void start() throws IOException {
+		// null is the loopback address
+		serverSocket = new ServerSocket(port, 1024, InetAddress.getByName(null));
+		executor = newConnectionExecutor();
+		sessions = new ShardedSessionManager(shardCount);
+		analysis = new AnalysisService(Runtime.getRuntime().availableProcessors(),
+				ANALYSIS_TABLE_MEGABYTES, analysisTtlMillis, analysisBudgetMillis);
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	public int getSessionCount() {
+		return sessions.getSessionCount();
+	}
+
+	public int getConnectionCount() {
+		return connections.get();
+	}
+
+	public AnalysisService getAnalysis() {
+		return analysis;
+	}
+
+	/* FUNC: acceptLoop() -> void
+	 * DESC:
+	 * 	hand every new connection its own thread until the server is closed
+	 */
+	public void acceptLoop() throws IOException {
+		while (!serverSocket.isClosed()) {
+			final Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (IOException e) {
+				if (serverSocket.isClosed()) {
+					break;
+				}
+				throw e;
+			}
+			socket.setTcpNoDelay(true);
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					serve(socket);
+				}
+			});
+		}
+	}
+
+	/* FUNC: close() -> void
+	 * DESC:
+	 * 	stop accepting and hang up on every open connection, a command already
+	 * 	running gets to finish first, then the sessions and analysis threads stop
+	 */
+	public void close() throws IOException {
+		serverSocket.close();
+		executor.shutdown();
+		Iterator<Socket> it = sockets.iterator();
+		while (it.hasNext()) {
+			try {
+				it.next().close();
+			} catch (IOException e) {
+				// already gone
+			}
+		}
+		try {
+			// an ANALYZE in progress is the slowest command there is
+			executor.awaitTermination(analysisBudgetMillis + 1000, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		sessions.close();
+		analysis.shutdown();
+	}
+
+	/* FUNC: newConnectionExecutor() -> ExecutorService
+	 * DESC:
+	 * 	one virtual thread per task when the runtime has them,
+	 * 	else a cached pool of daemon platform threads
+	 */
+	private static ExecutorService newConnectionExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (Exception e) {
+			final AtomicInteger count = new AtomicInteger();
+			return Executors.newCachedThreadPool(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable task) {
+					Thread thread = new Thread(task, "connection-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+	}
+
+	private String getThreadKind() {
+		return executor.getClass().getName().indexOf("ThreadPerTask") >= 0 ?
+				"virtual threads" : "platform threads";
+	}
+
+	/* FUNC: serve(Socket) -> void
+	 * DESC:
+	 * 	run one client's commands until it quits or hangs up
+	 */
+	private void serve(Socket socket) {
+		connections.incrementAndGet();
+		sockets.add(socket);
+		Client client = new Client();
+		try {
+			if (serverSocket.isClosed()) {
+				// close() may have missed this one
+				return;
+			}
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), "UTF-8"));
+			String line;
+			while (!client.quit && (line = in.readLine()) != null) {
+				out.write(client.handle(line.trim()));
+				out.write('\n');
+				out.flush();
+			}
+		} catch (IOException e) {
+			// the client went away
+		} finally {
+			sockets.remove(socket);
+			try {
+				client.leave();
+			} catch (IllegalStateException e) {
+				// the sessions are already closed
+			}
+			connections.decrementAndGet();
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// already gone
+			}
+		}
+	}
+
+	/**
+	 * One connection's state: the game it is playing, if any
+	 */
+	private final class Client {
+		// 0 when not in a game
+		private long session;
+		private boolean quit;
+
+		/* FUNC: handle(String) -> String
+		 * DESC:
+		 * 	run one command
+		 * RET:
+		 * 	the reply, without the final line break
+		 */
+		String handle(String line) {
+			String[] words = line.split("\\s+");
+			String command = words[0].toUpperCase();
+			try {
+				if (command.equals("NEW")) {
+					return create(words);
+				} else if (command.equals("JOIN") && words.length == 2) {
+					return join(Long.parseLong(words[1]));
+				} else if (command.equals("SESSIONS")) {
+					return "OK " + sessions.getSessionCount();
+				} else if (command.equals("QUIT")) {
+					quit = true;
+					return "OK";
+				} else if (command.equals("LEAVE")) {
+					leave();
+					return "OK";
+				} else if (command.equals("MOVE") || command.equals("UNDO") ||
+						command.equals("STATUS") || command.equals("SHOW") || command.equals("ANALYZE")) {
+					if (session == 0) {
+						return "ERR no game, use NEW or JOIN first";
+					}
+					if (command.equals("MOVE")) {
+						return words.length == 2 ? sessions.play(session, Integer.parseInt(words[1])) : "ERR usage: MOVE column";
+					} else if (command.equals("UNDO")) {
+						return sessions.undo(session);
+					} else if (command.equals("STATUS")) {
+						return sessions.status(session);
+					} else if (command.equals("ANALYZE")) {
+						return analyze(words.length == 2 ? Integer.parseInt(words[1]) : maxAnalysisDepth);
+					}
+					return sessions.show(session);
+				}
+			} catch (NumberFormatException e) {
+				return "ERR not a number in " + line;
+			} catch (RuntimeException e) {
+				return "ERR " + e.getMessage();
+			}
+			return "ERR unknown command " + line;
+		}
+
+		private String create(String[] words) {
+			int x = xLen;
+			int y = yLen;
+			int n = winningLength;
+			if (words.length == 4) {
+				x = Integer.parseInt(words[1]);
+				y = Integer.parseInt(words[2]);
+				n = Integer.parseInt(words[3]);
+			} else if (words.length != 1) {
+				return "ERR usage: NEW [X Y N]";
+			}
+			if (words.length != 1 && (x <= 0 || y <= 0 || x > maxSide || y > maxSide || n < 2 || n > Math.max(x, y))) {
+				return "ERR bad board " + x + "x" + y + "/" + n + ", sides go up to " + maxSide +
+						" and the line from 2 to the longer side";
+			}
+			if (sessions.getSessionCount() >= maxSessions) {
+				return "ERR too many games";
+			}
+			leave();
+			session = sessions.create(x, y, n);
+			return "OK " + session;
+		}
+
+		/* FUNC: analyze(int) -> String
+		 * DESC:
+		 * 	search the current game on the analysis threads, the shard only hands out a snapshot
+		 */
+		private String analyze(int depth) {
+			if (depth <= 0 || depth > maxAnalysisDepth) {
+				return "ERR depth must be 1 to " + maxAnalysisDepth;
+			}
+			BoardSnapshot snapshot = sessions.snapshot(session);
+			if (snapshot == null) {
+				return "ERR no game " + session;
+			}
+			if (snapshot.status() != GameLogic.STATUS_ONGOING) {
+				return "ERR game is over";
+			}
+			try {
+				SearchResult result = analysis.analyze(snapshot.toGameLogic(), depth);
+				return "OK " + result.bestColumn + " " + result.score + " " + result.depth + " " + result.nodes;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				quit = true;
+				return "ERR interrupted";
+			}
+		}
+
+		private String join(long id) {
+			if (!sessions.join(id)) {
+				return "ERR no game " + id;
+			}
+			leave();
+			session = id;
+			return "OK " + id;
+		}
+
+		/* FUNC: leave() -> void
+		 * DESC:
+		 * 	drop the current game, taking it off the registry when nobody plays it any more
+		 */
+		void leave() {
+			if (session != 0) {
+				sessions.leave(session);
+				session = 0;
+			}
+		}
+	}
+}
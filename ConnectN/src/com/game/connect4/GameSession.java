@@ -0,0 +1,129 @@
+package com.game.connect4;
+
+/**
+ * This is the Game Session class,
+ * one hosted game on a GameServer and the clients playing it.
+ * Not thread safe, a session is only ever touched by the thread of the
+ * ShardedSessionManager shard that owns it
+ *
+ * @author Yufan Lu
+ */
+public class GameSession {
+	private final long id;
+	private final GameLogic game;
+	private int clients;
+	// Set once the last client left, the session can't be joined after that
+	private boolean closed;
+
+	/*
+	 * FUNC: Constructor(long, int, int, int)
+	 * DESC:
+	 * 	a new empty game with no clients yet
+	 */
+	public GameSession(long id, int xLen, int yLen, int winningLength) {
+		this.id = id;
+		game = new GameLogic(xLen, yLen, winningLength);
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	/* FUNC: join() -> boolean
+	 * DESC:
+	 * 	add a client
+	 * RET:
+	 * 	false if the session already closed
+	 */
+	public boolean join() {
+		if (closed) {
+			return false;
+		}
+		clients++;
+		return true;
+	}
+
+	/* FUNC: leave() -> boolean
+	 * DESC:
+	 * 	remove a client
+	 * RET:
+	 * 	true if that was the last one and the session is now closed
+	 */
+	public boolean leave() {
+		clients--;
+		if (clients == 0) {
+			closed = true;
+		}
+		return closed;
+	}
+
+	/* FUNC: play(int) -> String
+	 * DESC:
+	 * 	drop a disc for the player to move
+	 * RET:
+	 * 	the protocol reply, see GameServer
+	 */
+	public String play(int column) {
+		if (game.status() != GameLogic.STATUS_ONGOING) {
+			return "ERR game is over";
+		}
+		if (!game.play(column)) {
+			return "ERR column " + column + " is not playable";
+		}
+		return "OK " + describe();
+	}
+
+	public String undo() {
+		if (!game.undo()) {
+			return "ERR nothing to undo";
+		}
+		return "OK " + describe();
+	}
+
+	public String status() {
+		return "OK " + describe();
+	}
+
+	/* FUNC: snapshot() -> BoardSnapshot
+	 * DESC:
+	 * 	the game as it is now, for other threads to read
+	 */
+	public BoardSnapshot snapshot() {
+		return game.snapshot();
+	}
+
+	/* FUNC: show() -> String
+	 * DESC:
+	 * 	the board top row first, X for the first player and O for the second,
+	 * 	then the status line
+	 */
+	public String show() {
+		StringBuilder text = new StringBuilder();
+		for (int y = game.getYLen() - 1; y >= 0; y--) {
+			for (int x = 0; x < game.getXLen(); x++) {
+				int mark = game.getGrid(x, y);
+				text.append(mark == GameLogic.GRID_FIRST_PLAYER ? 'X' :
+						(mark == GameLogic.GRID_SECOND_PLAYER ? 'O' : '.'));
+			}
+			text.append('\n');
+		}
+		return text.append("OK ").append(describe()).toString();
+	}
+
+	/* FUNC: describe() -> String
+	 * DESC:
+	 * 	"ONGOING <player to move>", "WIN <winner>" or "DRAW", then the move count
+	 */
+	private String describe() {
+		int status = game.status();
+		String text;
+		if (status == GameLogic.STATUS_WIN) {
+			text = "WIN " + game.winner();
+		} else if (status == GameLogic.STATUS_DRAW) {
+			text = "DRAW";
+		} else {
+			text = "ONGOING " + game.getCurrentPlayer();
+		}
+		return text + " " + game.getMoveCount();
+	}
+}
@@ -0,0 +1,69 @@
+package com.game.connect4;
+
+import java.util.List;
+
+/**
+ * This is the Game State interface,
+ * the rules of a gravity connect-N game as the screens and tools see them.
+ * GameLogic keeps the board dense for speed on screen-sized boards,
+ * SparseGameLogic only stores the discs for huge, mostly empty boards.
+ * Grid values and status codes are the GameLogic constants
+ *
+ * @author Yufan Lu
+ */
+public interface GameState {
+	int getXLen();
+
+	int getYLen();
+
+	int getWinningSize();
+
+	/* FUNC: getGrid(int, int) -> int
+	 * DESC:
+	 * 	GRID_EMPTY, GRID_FIRST_PLAYER, GRID_SECOND_PLAYER,
+	 * 	or GRID_PLACEABLE for the cell the next disc of the column lands on
+	 */
+	int getGrid(int x, int y);
+
+	int getColumnHeight(int x);
+
+	boolean isPlayable(int x);
+
+	int getMoveCount();
+
+	int getMove(int ply);
+
+	int getCurrentPlayer();
+
+	/* FUNC: play(int) -> boolean
+	 * DESC:
+	 * 	drop a disc of the player to move into the column
+	 * RET:
+	 * 	false if the column is full or off the board, the game is left as it was then
+	 */
+	boolean play(int column);
+
+	/* FUNC: clickGrid(int, int) -> boolean
+	 * DESC:
+	 * 	play the column if the cell is the one its next disc lands on
+	 * RET:
+	 * 	false otherwise, cells off the board included
+	 */
+	boolean clickGrid(int xIndex, int yIndex);
+
+	/* FUNC: undo() -> boolean
+	 * DESC:
+	 * 	take back the last move
+	 * RET:
+	 * 	false if there's no move to take back
+	 */
+	boolean undo();
+
+	void reset();
+
+	int winner();
+
+	int status();
+
+	List<MyPoint<Integer> > GetWinningTrack();
+}
@@ -0,0 +1,125 @@
+package com.game.connect4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This is the Lazy SMP Search class,
+ * several NegamaxEngines searching the same root at the same time.
+ * They only talk through the shared lock-free TranspositionTable:
+ * whatever one thread has found makes the others' searches cheaper.
+ * Helpers start at staggered depths so the threads spread over different iterations
+ *
+ * @author Yufan Lu
+ */
+public class LazySmpSearch {
+	private final TranspositionTable table;
+	private final NegamaxEngine[] engines;
+	private final ExecutorService helpers;
+
+	/*
+	 * FUNC: Constructor(int, int)
+	 * DESC:
+	 * 	Constructor for the LazySmpSearch
+	 * ARGS:
+	 * 	threads        -- number of search threads, the calling thread included
+	 * 	tableMegabytes -- size of the shared transposition table
+	 */
+	public LazySmpSearch(int threads, int tableMegabytes) {
+		table = new TranspositionTable(tableMegabytes);
+		engines = new NegamaxEngine[Math.max(1, threads)];
+		for (int i = 0; i < engines.length; i++) {
+			engines[i] = new NegamaxEngine(table);
+		}
+		helpers = engines.length > 1 ? Executors.newFixedThreadPool(engines.length - 1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "search-helper");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}) : null;
+	}
+
+	public int getThreadCount() {
+		return engines.length;
+	}
+
+	/* FUNC: search(GameLogic, long, long, int) -> SearchResult
+	 * DESC:
+	 * 	search with every thread, the calling thread acts as the main one
+	 * 	and the helpers stop as soon as it's done
+	 * ARG:
+	 * 	position   -- the position to search
+	 * 	timeMillis -- wall clock budget, 0 for none
+	 * 	maxNodes   -- node budget of the main thread, 0 for none
+	 * 	maxDepth   -- depth limit, 0 to go until the board is full
+	 * RET:
+	 * 	the move of the deepest finished iteration, nodes summed over all threads,
+	 * 	IllegalStateException if a helper failed
+	 */
+	public synchronized SearchResult search(final GameLogic position, final long timeMillis, long maxNodes, final int maxDepth) {
+		table.newSearch();
+		List<Future<SearchResult> > futures = new ArrayList<Future<SearchResult> >();
+		for (int i = 1; i < engines.length; i++) {
+			final NegamaxEngine engine = engines[i];
+			// odd helpers skip a ply, every fourth one skips two
+			final int startDepth = 1 + (i & 1) + (i % 4 == 0 ? 2 : 0);
+			futures.add(helpers.submit(new Callable<SearchResult>() {
+				@Override
+				public SearchResult call() {
+					return engine.search(position, timeMillis, 0, maxDepth, startDepth);
+				}
+			}));
+		}
+
+		SearchResult best = engines[0].search(position, timeMillis, maxNodes, maxDepth, 1);
+		for (int i = 1; i < engines.length; i++) {
+			engines[i].stop();
+		}
+		long nodes = best.nodes;
+		ExecutionException failure = null;
+		for (int i = 0; i < futures.size(); i++) {
+			SearchResult helper;
+			try {
+				helper = futures.get(i).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				helper = new SearchResult();
+			} catch (ExecutionException e) {
+				// wait for the others all the same, so no helper is still searching after we return
+				if (failure == null) {
+					failure = e;
+				}
+				helper = new SearchResult();
+			}
+			// the helper may have finished before it was told to stop
+			engines[i + 1].clearStop();
+			nodes += helper.nodes;
+			if (helper.depth > best.depth && helper.bestColumn != -1) {
+				best = helper;
+			}
+		}
+		if (failure != null) {
+			throw new IllegalStateException("Search helper failed", failure.getCause());
+		}
+		best.nodes = nodes;
+		return best;
+	}
+
+	/* FUNC: shutdown() -> void
+	 * DESC:
+	 * 	let the helper threads go
+	 */
+	public void shutdown() {
+		if (helpers != null) {
+			helpers.shutdownNow();
+		}
+	}
+}
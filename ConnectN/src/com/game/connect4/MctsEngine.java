@@ -0,0 +1,320 @@
+package com.game.connect4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is the MCTS Engine class,
+ * a Monte Carlo tree search (UCT) computer player meant for the big boards
+ * where alpha-beta can't look far enough.
+ * All threads grow one shared tree kept in preallocated primitive arrays,
+ * a node's children are xLen consecutive slots, one per column.
+ * Threads walking down add a virtual loss to the nodes they pass so the
+ * others spread over different lines, and the random playouts run on each
+ * thread's own GameLogic with play/undo, so they don't allocate
+ *
+ * @author Yufan Lu
+ */
+public class MctsEngine {
+	// Constants
+	private final static int UNEXPANDED = -1;
+	private final static int EXPANDING = -2;
+	private final static int POOL_FULL = -3;
+	private final static int VIRTUAL_LOSS = 3;
+	// Rewards are counted in half points: win 2, draw 1, loss 0
+	private final static int REWARD_WIN = 2;
+	private final static int REWARD_DRAW = 1;
+	private final static double EXPLORATION = 1.4;
+
+	// The shared tree, node 0 is the root
+	private final int capacity;
+	private final AtomicIntegerArray visits;
+	private final AtomicIntegerArray rewards;
+	private final AtomicIntegerArray children;
+	private final AtomicInteger nextFree = new AtomicInteger();
+
+	private final int threads;
+	private final ExecutorService helpers;
+
+	// Budget of the running search
+	private final AtomicLong iterationsLeft = new AtomicLong();
+	private volatile long deadline;
+
+	/*
+	 * FUNC: Constructor(int, int)
+	 * DESC:
+	 * 	Constructor for the MctsEngine
+	 * ARGS:
+	 * 	threadCount  -- number of threads, the calling thread included
+	 * 	maxTreeNodes -- size of the node pool, the tree stops growing when it's used up
+	 */
+	public MctsEngine(int threadCount, int maxTreeNodes) {
+		threads = Math.max(1, threadCount);
+		capacity = maxTreeNodes;
+		visits = new AtomicIntegerArray(capacity);
+		rewards = new AtomicIntegerArray(capacity);
+		children = new AtomicIntegerArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			children.set(i, UNEXPANDED);
+		}
+		helpers = threads > 1 ? Executors.newFixedThreadPool(threads - 1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "mcts-worker");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}) : null;
+	}
+
+	/* FUNC: search(GameLogic, long, long) -> MctsResult
+	 * DESC:
+	 * 	grow the tree from the position until a budget runs out
+	 * ARG:
+	 * 	position      -- the position to search, left untouched
+	 * 	timeMillis    -- wall clock budget, 0 for none
+	 * 	maxIterations -- playout budget over all threads, 0 for none
+	 * RET:
+	 * 	the most visited column and the visit count of every column,
+	 * 	IllegalStateException if a worker failed
+	 */
+	public synchronized MctsResult search(final GameLogic position, long timeMillis, long maxIterations) {
+		long start = System.nanoTime();
+		if (timeMillis <= 0 && maxIterations <= 0) {
+			throw new IllegalArgumentException("MCTS needs a time or an iteration budget");
+		}
+		deadline = timeMillis > 0 ? start + timeMillis * 1000000L : Long.MAX_VALUE;
+		iterationsLeft.set(maxIterations > 0 ? maxIterations : Long.MAX_VALUE);
+		resetTree();
+
+		List<Future<Long> > futures = new ArrayList<Future<Long> >();
+		for (int i = 1; i < threads; i++) {
+			final long seed = start * (i + 1);
+			futures.add(helpers.submit(new Callable<Long>() {
+				@Override
+				public Long call() {
+					return Long.valueOf(runWorker(new GameLogic(position), seed));
+				}
+			}));
+		}
+		long iterations = runWorker(new GameLogic(position), start);
+		ExecutionException failure = null;
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				iterations += futures.get(i).get().longValue();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				// the other workers still share the tree, let them finish first
+				if (failure == null) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw new IllegalStateException("MCTS worker failed", failure.getCause());
+		}
+
+		MctsResult result = new MctsResult();
+		int xLen = position.getXLen();
+		result.columnVisits = new int[xLen];
+		int base = children.get(0);
+		int bestVisits = -1;
+		for (int column = 0; column < xLen; column++) {
+			if (!position.isPlayable(column)) {
+				continue;
+			}
+			int count = base >= 0 ? visits.get(base + column) : 0;
+			result.columnVisits[column] = count;
+			if (count > bestVisits) {
+				bestVisits = count;
+				result.bestColumn = column;
+				// win rate of the move in per mille
+				result.score = count > 0 ? (int) (rewards.get(base + column) * 500L / count) : 0;
+			}
+		}
+		result.nodes = iterations;
+		result.depth = 1;
+		result.timeMillis = (System.nanoTime() - start) / 1000000L;
+		return result;
+	}
+
+	/* FUNC: shutdown() -> void
+	 * DESC:
+	 * 	let the worker threads go
+	 */
+	public void shutdown() {
+		if (helpers != null) {
+			helpers.shutdownNow();
+		}
+	}
+
+	/* FUNC: resetTree() -> void
+	 * DESC:
+	 * 	start over from a bare root, the other nodes are cleared by expand() as they're handed out again
+	 */
+	private void resetTree() {
+		visits.set(0, 0);
+		rewards.set(0, 0);
+		children.set(0, UNEXPANDED);
+		nextFree.set(1);
+	}
+
+	/* FUNC: runWorker(GameLogic, long) -> long
+	 * DESC:
+	 * 	select, expand, play out and back up until the budget runs out
+	 * ARG:
+	 * 	game -- this thread's copy of the root position
+	 * 	seed -- seed of this thread's random playouts
+	 * RET:
+	 * 	number of iterations done
+	 */
+	private long runWorker(GameLogic game, long seed) {
+		int xLen = game.getXLen();
+		int cells = xLen * game.getYLen();
+		int rootMoves = game.getMoveCount();
+		int[] path = new int[cells - rootMoves + 1];
+		int[] playable = new int[xLen];
+		long random = seed | 1L;
+		long done = 0;
+
+		while (iterationsLeft.decrementAndGet() >= 0) {
+			if ((done & 63) == 0 && System.nanoTime() > deadline) {
+				break;
+			}
+			// selection, every node on the way takes a virtual loss
+			int depth = 0;
+			int node = 0;
+			path[0] = 0;
+			visits.addAndGet(0, VIRTUAL_LOSS);
+			while (game.winner() == -1 && game.getMoveCount() < cells) {
+				int base = children.get(node);
+				if (base == UNEXPANDED && visits.get(node) > VIRTUAL_LOSS) {
+					base = expand(node, xLen);
+				}
+				if (base < 0) {
+					break;
+				}
+				random = nextRandom(random);
+				int column = select(game, node, base, xLen, random);
+				node = base + column;
+				game.play(column);
+				path[++depth] = node;
+				visits.addAndGet(node, VIRTUAL_LOSS);
+			}
+
+			// random playout from the leaf
+			int leafMoves = game.getMoveCount();
+			while (game.winner() == -1 && game.getMoveCount() < cells && !game.isDeadPosition()) {
+				random = nextRandom(random);
+				game.play(randomColumn(game, playable, random));
+			}
+			int winner = game.winner();
+			while (game.getMoveCount() > leafMoves) {
+				game.undo();
+			}
+
+			// back up, the reward of a node belongs to the player who moved into it
+			for (int d = depth; d >= 0; d--) {
+				int mover = (rootMoves + d - 1) % 2 == 0 ?
+						GameLogic.GRID_FIRST_PLAYER : GameLogic.GRID_SECOND_PLAYER;
+				int reward = winner == -1 ? REWARD_DRAW : (winner == mover ? REWARD_WIN : 0);
+				visits.addAndGet(path[d], 1 - VIRTUAL_LOSS);
+				if (reward != 0) {
+					rewards.addAndGet(path[d], reward);
+				}
+				if (d > 0) {
+					game.undo();
+				}
+			}
+			done++;
+		}
+		return done;
+	}
+
+	/* FUNC: expand(int, int) -> int
+	 * DESC:
+	 * 	give the node its block of children, only one thread gets to do it.
+	 * 	The block is cleared before it's published, it may hold nodes of the last search
+	 * RET:
+	 * 	index of the first child, or a negative state if there are no children yet
+	 */
+	private int expand(int node, int xLen) {
+		if (!children.compareAndSet(node, UNEXPANDED, EXPANDING)) {
+			return children.get(node);
+		}
+		int base = nextFree.getAndAdd(xLen);
+		if (base + xLen > capacity) {
+			children.set(node, POOL_FULL);
+			return POOL_FULL;
+		}
+		for (int child = base; child < base + xLen; child++) {
+			visits.set(child, 0);
+			rewards.set(child, 0);
+			children.set(child, UNEXPANDED);
+		}
+		children.set(node, base);
+		return base;
+	}
+
+	/* FUNC: select(GameLogic, int, int, int, long) -> int
+	 * DESC:
+	 * 	UCT choice among the playable columns, unvisited ones first
+	 */
+	private int select(GameLogic game, int node, int base, int xLen, long random) {
+		double logParent = Math.log(Math.max(1, visits.get(node)));
+		double bestValue = -1.0;
+		int bestColumn = -1;
+		int offset = (int) ((random >>> 33) % xLen);
+		for (int i = 0; i < xLen; i++) {
+			int column = (i + offset) % xLen;
+			if (!game.isPlayable(column)) {
+				continue;
+			}
+			int childVisits = visits.get(base + column);
+			if (childVisits == 0) {
+				return column;
+			}
+			double value = rewards.get(base + column) / (2.0 * childVisits) +
+					EXPLORATION * Math.sqrt(logParent / childVisits);
+			if (value > bestValue) {
+				bestValue = value;
+				bestColumn = column;
+			}
+		}
+		return bestColumn;
+	}
+
+	/* FUNC: randomColumn(GameLogic, int[], long) -> int
+	 * DESC:
+	 * 	a uniformly random playable column, a few blind tries first
+	 * 	and the full list of playable columns when those miss
+	 */
+	private static int randomColumn(GameLogic game, int[] playable, long random) {
+		int xLen = game.getXLen();
+		for (int i = 0; i < 4; i++) {
+			int column = (int) ((random >>> (16 * i)) & 0xFFFF) % xLen;
+			if (game.isPlayable(column)) {
+				return column;
+			}
+		}
+		int count = game.playableColumns(playable);
+		return playable[(int) ((random >>> 1) % count)];
+	}
+
+	private static long nextRandom(long x) {
+		x ^= x << 13;
+		x ^= x >>> 7;
+		x ^= x << 17;
+		return x;
+	}
+}
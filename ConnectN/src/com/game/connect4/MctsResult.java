@@ -0,0 +1,12 @@
+package com.game.connect4;
+
+/**
+ * This is the MCTS Result class,
+ * a SearchResult that also carries how often each root column was visited.
+ * score is the win rate of the chosen column in per mille, nodes the number of playouts
+ *
+ * @author Yufan Lu
+ */
+public class MctsResult extends SearchResult {
+	public int[] columnVisits;
+}
@@ -0,0 +1,349 @@
+package com.game.connect4;
+
+/**
+ * This is the Negamax Engine class,
+ * an alpha-beta computer player working on top of GameLogic's play/undo.
+ * It deepens one ply at a time until the time or node budget runs out,
+ * and answers with the best move of the last finished iteration.
+ * The table is keyed by GameLogic's canonical key, a position and its
+ * mirror image share an entry and the stored column is mirrored on the way in and out
+ *
+ * @author Yufan Lu
+ */
+public class NegamaxEngine {
+	// Constants
+	public final static int WIN_SCORE = 1 << 30;
+	public final static int INFINITY = WIN_SCORE + 1;
+	// At most this many nodes are searched between two looks at the clock,
+	// fewer on big boards so it's about CLOCK_CHECK_LINES winning lines evaluated
+	private final static int CLOCK_CHECK_NODES = 1024;
+	private final static int CLOCK_CHECK_LINES = 1 << 16;
+	// Cap on the weight of one window, keeps evaluations of huge boards far below WIN_SCORE
+	private final static int MAX_LINE_WEIGHT = 4096;
+	// Scores beyond this are wins or losses in some number of plies
+	private final static int MATE_THRESHOLD = WIN_SCORE / 2;
+	private final static int DEFAULT_TABLE_MEGABYTES = 16;
+
+	// Search state
+	private final TranspositionTable table;
+	private OpeningBook book;
+	private GameLogic game;
+	private MoveOrderer orderer;
+	// Ordered columns of each ply, allocated as the search gets there
+	private int[][] moveLists;
+	private int[] lineWeights;
+	private long deadline;
+	private int clockCheckMask;
+	private long nodeLimit;
+	private long nodes;
+	private boolean aborted;
+	// Set from another thread to end the current search early
+	private volatile boolean stopRequested;
+
+	public NegamaxEngine() {
+		this(DEFAULT_TABLE_MEGABYTES);
+	}
+
+	/*
+	 * FUNC: Constructor(int)
+	 * DESC:
+	 * 	Constructor for the NegamaxEngine
+	 * ARGS:
+	 * 	tableMegabytes -- size of the transposition table
+	 */
+	public NegamaxEngine(int tableMegabytes) {
+		this(new TranspositionTable(tableMegabytes));
+	}
+
+	/*
+	 * FUNC: Constructor(TranspositionTable)
+	 * DESC:
+	 * 	Constructor for an engine sharing its table with other engines
+	 * ARGS:
+	 * 	sharedTable -- the transposition table to use
+	 */
+	public NegamaxEngine(TranspositionTable sharedTable) {
+		table = sharedTable;
+	}
+
+	/* FUNC: stop() -> void
+	 * DESC:
+	 * 	ask a running search to return as soon as possible, safe to call from any thread,
+	 * 	a stop that comes before the search starts ends it right away
+	 */
+	public void stop() {
+		stopRequested = true;
+	}
+
+	void clearStop() {
+		stopRequested = false;
+	}
+
+	public TranspositionTable getTable() {
+		return table;
+	}
+
+	/* FUNC: setOpeningBook(OpeningBook) -> void
+	 * DESC:
+	 * 	positions found in the book are answered from it without searching, null turns it off
+	 */
+	public void setOpeningBook(OpeningBook openingBook) {
+		book = openingBook;
+	}
+
+	/* FUNC: search(GameLogic, long, long, int) -> SearchResult
+	 * DESC:
+	 * 	find a move for the side to move, the given position is left untouched
+	 * ARG:
+	 * 	position   -- the position to search
+	 * 	timeMillis -- wall clock budget, 0 for none
+	 * 	maxNodes   -- node budget, 0 for none
+	 * 	maxDepth   -- depth limit, 0 to go until the board is full
+	 * RET:
+	 * 	the best move found
+	 */
+	public SearchResult search(GameLogic position, long timeMillis, long maxNodes, int maxDepth) {
+		if (book != null) {
+			SearchResult result = book.lookup(position);
+			if (result != null) {
+				return result;
+			}
+		}
+		table.newSearch();
+		return search(position, timeMillis, maxNodes, maxDepth, 1);
+	}
+
+	/* FUNC: search(GameLogic, long, long, int, int) -> SearchResult
+	 * DESC:
+	 * 	same as above, starting the iterations at a given depth,
+	 * 	parallel helpers use it to stagger their depths
+	 */
+	SearchResult search(GameLogic position, long timeMillis, long maxNodes, int maxDepth, int startDepth) {
+		long start = System.nanoTime();
+		prepare(position);
+		deadline = timeMillis > 0 ? start + timeMillis * 1000000L : Long.MAX_VALUE;
+		nodeLimit = maxNodes > 0 ? maxNodes : Long.MAX_VALUE;
+		nodes = 0;
+		aborted = false;
+
+		int emptyCells = game.getXLen() * game.getYLen() - game.getMoveCount();
+		if (maxDepth <= 0 || maxDepth > emptyCells) {
+			maxDepth = emptyCells;
+		}
+
+		SearchResult result = new SearchResult();
+		int[] rootMoves = movesAt(0);
+		if (orderer.orderMoves(game, 0, -1, rootMoves) > 0) {
+			result.bestColumn = rootMoves[0];
+		}
+		if (result.bestColumn != -1 && game.winner() == -1) {
+			for (int depth = Math.min(startDepth, maxDepth); depth <= maxDepth; depth++) {
+				int bestColumn = -1;
+				int alpha = -INFINITY;
+				// the best column of the previous iteration goes first
+				int count = orderer.orderMoves(game, 0, result.bestColumn, rootMoves);
+				for (int i = 0; i < count; i++) {
+					int column = rootMoves[i];
+					game.play(column);
+					int score = -negamax(depth - 1, -INFINITY, -alpha, 1);
+					game.undo();
+					if (aborted) {
+						break;
+					}
+					if (score > alpha) {
+						alpha = score;
+						bestColumn = column;
+					}
+				}
+				if (aborted) {
+					break;
+				}
+				result.bestColumn = bestColumn;
+				result.score = alpha;
+				result.depth = depth;
+				table.store(game.getCanonicalKey(), alpha, TranspositionTable.BOUND_EXACT, depth,
+						game.canonicalColumn(bestColumn));
+				if (Math.abs(alpha) >= WIN_SCORE - emptyCells) {
+					// proven win or loss, deeper won't change it
+					break;
+				}
+			}
+		}
+		stopRequested = false;
+		result.nodes = nodes;
+		result.cutoffs = orderer.getCutoffs();
+		result.firstMoveCutoffs = orderer.getFirstMoveCutoffs();
+		result.timeMillis = (System.nanoTime() - start) / 1000000L;
+		return result;
+	}
+
+	/* FUNC: prepare(GameLogic) -> void
+	 * DESC:
+	 * 	copy the position and rebuild the tables if the board size changed
+	 */
+	private void prepare(GameLogic position) {
+		game = new GameLogic(position);
+		int xLen = game.getXLen();
+		int yLen = game.getYLen();
+		if (orderer == null || !orderer.fits(xLen, yLen)) {
+			orderer = new MoveOrderer(xLen, yLen);
+			moveLists = new int[xLen * yLen + 1][];
+		}
+		orderer.newSearch();
+		// a node's evaluation walks every winning line, so look at the clock more often when there are many
+		int lineCount = Math.max(1, game.getLines().lineCount);
+		clockCheckMask = Integer.highestOneBit(Math.max(1, Math.min(CLOCK_CHECK_NODES, CLOCK_CHECK_LINES / lineCount))) - 1;
+		int n = game.getWinningSize();
+		if (lineWeights == null || lineWeights.length != n + 1) {
+			lineWeights = new int[n + 1];
+			for (int i = 1; i <= n; i++) {
+				lineWeights[i] = Math.min(lineWeights[i - 1] * 4 + 1, MAX_LINE_WEIGHT);
+			}
+		}
+	}
+
+	/* FUNC: negamax(int, int, int, int) -> int
+	 * DESC:
+	 * 	alpha-beta search of the current game position
+	 * ARG:
+	 * 	depth -- remaining depth
+	 * 	alpha -- lower bound
+	 * 	beta  -- upper bound
+	 * 	ply   -- distance from the root, faster wins score higher
+	 * RET:
+	 * 	score for the side to move
+	 */
+	private int negamax(int depth, int alpha, int beta, int ply) {
+		if ((++nodes & clockCheckMask) == 0 &&
+				(stopRequested || System.nanoTime() > deadline || nodes >= nodeLimit)) {
+			aborted = true;
+		}
+		if (aborted) {
+			return 0;
+		}
+		if (game.winner() != -1) {
+			// the last move won, so the side to move has lost
+			return -(WIN_SCORE - ply);
+		}
+		if (game.getMoveCount() == game.getXLen() * game.getYLen()) {
+			return 0;
+		}
+		if (depth == 0) {
+			return evaluate();
+		}
+		if (depth >= 2 && game.isDeadPosition()) {
+			// nobody can complete a line any more, it's a draw however it's played out
+			return 0;
+		}
+
+		long key = game.getCanonicalKey();
+		long entry = table.probe(key);
+		int tableColumn = -1;
+		if (entry != 0) {
+			tableColumn = game.canonicalColumn(TranspositionTable.columnOf(entry));
+			if (TranspositionTable.depthOf(entry) >= depth) {
+				int score = fromTable(TranspositionTable.scoreOf(entry), ply);
+				int bound = TranspositionTable.boundOf(entry);
+				if (bound == TranspositionTable.BOUND_EXACT) {
+					return score;
+				} else if (bound == TranspositionTable.BOUND_LOWER) {
+					alpha = Math.max(alpha, score);
+				} else {
+					beta = Math.min(beta, score);
+				}
+				if (alpha >= beta) {
+					return score;
+				}
+			}
+		}
+
+		int alphaOrig = alpha;
+		int best = -INFINITY;
+		int bestColumn = -1;
+		int[] moveList = movesAt(ply);
+		int count = orderer.orderMoves(game, ply, tableColumn, moveList);
+		for (int i = 0; i < count; i++) {
+			int column = moveList[i];
+			game.play(column);
+			int score = -negamax(depth - 1, -beta, -alpha, ply + 1);
+			game.undo();
+			if (score > best) {
+				best = score;
+				bestColumn = column;
+				if (score > alpha) {
+					alpha = score;
+					if (alpha >= beta) {
+						if (!aborted) {
+							orderer.recordCutoff(game, ply, column, depth, i);
+						}
+						break;
+					}
+				}
+			}
+		}
+		if (!aborted) {
+			int bound = best <= alphaOrig ? TranspositionTable.BOUND_UPPER :
+				(best >= beta ? TranspositionTable.BOUND_LOWER : TranspositionTable.BOUND_EXACT);
+			table.store(key, toTable(best, ply), bound, depth, game.canonicalColumn(bestColumn));
+		}
+		return best;
+	}
+
+	/* FUNC: movesAt(int) -> int[]
+	 * DESC:
+	 * 	the move list of a ply, so recursion doesn't overwrite the parent's list
+	 */
+	private int[] movesAt(int ply) {
+		if (moveLists[ply] == null) {
+			moveLists[ply] = new int[game.getXLen()];
+		}
+		return moveLists[ply];
+	}
+
+	/* FUNC: toTable(int, int) -> int
+	 * DESC:
+	 * 	win and loss scores count plies from the root,
+	 * 	the table keeps them counted from the stored position instead
+	 */
+	private static int toTable(int score, int ply) {
+		if (score > MATE_THRESHOLD) {
+			return score + ply;
+		} else if (score < -MATE_THRESHOLD) {
+			return score - ply;
+		}
+		return score;
+	}
+
+	private static int fromTable(int score, int ply) {
+		if (score > MATE_THRESHOLD) {
+			return score - ply;
+		} else if (score < -MATE_THRESHOLD) {
+			return score + ply;
+		}
+		return score;
+	}
+
+	/* FUNC: evaluate() -> int
+	 * DESC:
+	 * 	static score of a quiet position: every winning line
+	 * 	holding discs of only one player counts for that player,
+	 * 	more discs on the line count a lot more
+	 * RET:
+	 * 	score for the side to move
+	 */
+	private int evaluate() {
+		WinningLines lines = game.getLines();
+		BitBoard board = game.getBoard();
+		int score = 0;
+		for (int line = 0; line < lines.lineCount; line++) {
+			int firstCount = lines.count(board, GameLogic.GRID_FIRST_PLAYER, line);
+			int secondCount = lines.count(board, GameLogic.GRID_SECOND_PLAYER, line);
+			if (secondCount == 0) {
+				score += lineWeights[firstCount];
+			} else if (firstCount == 0) {
+				score -= lineWeights[secondCount];
+			}
+		}
+		return game.getCurrentPlayer() == GameLogic.GRID_FIRST_PLAYER ? score : -score;
+	}
+}
@@ -0,0 +1,181 @@
+package com.game.connect4;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This is the Opening Book class,
+ * read-only view of a book file written by OpeningBookBuilder.
+ * The file is memory-mapped and searched in place, so looking a move up
+ * doesn't copy or allocate anything.
+ * File layout, little endian:
+ * 	header -- magic, version, xLen, yLen, winningLength, record count (6 ints)
+ * 	records sorted by key, each 16 bytes:
+ * 		long key, int score, short column, short depth
+ * Keys are canonical keys, so mirrored positions are stored once and the
+ * column is the one of the canonical side
+ *
+ * @author Yufan Lu
+ */
+public class OpeningBook {
+	// Constants
+	public final static int MAGIC = 0x434E424B;
+	public final static int VERSION = 2;
+	public final static int HEADER_SIZE = 24;
+	public final static int RECORD_SIZE = 16;
+
+	private final MappedByteBuffer buffer;
+	private final int xLen;
+	private final int yLen;
+	private final int winningLength;
+	private final int count;
+
+	/*
+	 * FUNC: Constructor(File)
+	 * DESC:
+	 * 	map a book file and check its header
+	 * ARGS:
+	 * 	file -- the book file
+	 */
+	public OpeningBook(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			// the mapping stays valid after the file is closed
+			raf.close();
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IOException(file + " is not an opening book");
+		}
+		xLen = buffer.getInt(8);
+		yLen = buffer.getInt(12);
+		winningLength = buffer.getInt(16);
+		count = buffer.getInt(20);
+		if ((long) HEADER_SIZE + (long) count * RECORD_SIZE > buffer.capacity()) {
+			throw new IOException(file + " is truncated");
+		}
+	}
+
+	/* FUNC: openIfPresent(int, int, int) -> OpeningBook
+	 * DESC:
+	 * 	open the book of a board size from the working directory
+	 * RET:
+	 * 	the book, null if there's none, IOException if it's there but can't be read
+	 */
+	public static OpeningBook openIfPresent(int xLen, int yLen, int winningLength) throws IOException {
+		return openIfPresent(defaultFileName(xLen, yLen, winningLength), xLen, yLen, winningLength);
+	}
+
+	/* FUNC: openIfPresent(String, int, int, int) -> OpeningBook
+	 * DESC:
+	 * 	open a book file if it's there and made for the board size
+	 * RET:
+	 * 	the book, null if there's none or it's for another board,
+	 * 	IOException if it's there but can't be read
+	 */
+	public static OpeningBook openIfPresent(String fileName, int xLen, int yLen, int winningLength)
+			throws IOException {
+		File file = new File(fileName);
+		if (!file.isFile()) {
+			return null;
+		}
+		OpeningBook book = new OpeningBook(file);
+		return book.matches(xLen, yLen, winningLength) ? book : null;
+	}
+
+	public static String defaultFileName(int xLen, int yLen, int winningLength) {
+		return "book-" + xLen + "x" + yLen + "-" + winningLength + ".bin";
+	}
+
+	/* FUNC: perfectFileName(int, int, int) -> String
+	 * DESC:
+	 * 	file name of an exact book for PerfectSolver, its scores are solver scores
+	 * 	so it's kept apart from the NegamaxEngine book
+	 */
+	public static String perfectFileName(int xLen, int yLen, int winningLength) {
+		return "perfect-" + xLen + "x" + yLen + "-" + winningLength + ".bin";
+	}
+
+	public boolean matches(int x, int y, int n) {
+		return xLen == x && yLen == y && winningLength == n;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	/* FUNC: keyOf(GameLogic) -> long
+	 * DESC:
+	 * 	the key a position is stored under, shared with its mirror image
+	 */
+	public static long keyOf(GameLogic game) {
+		return game.getCanonicalKey();
+	}
+
+	/* FUNC: find(long) -> int
+	 * DESC:
+	 * 	binary search of the mapped records
+	 * RET:
+	 * 	record index, -1 if the key isn't in the book
+	 */
+	public int find(long key) {
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long midKey = buffer.getLong(HEADER_SIZE + mid * RECORD_SIZE);
+			if (midKey < key) {
+				low = mid + 1;
+			} else if (midKey > key) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	public int scoreAt(int index) {
+		return buffer.getInt(HEADER_SIZE + index * RECORD_SIZE + 8);
+	}
+
+	public int columnAt(int index) {
+		return buffer.getShort(HEADER_SIZE + index * RECORD_SIZE + 12);
+	}
+
+	public int depthAt(int index) {
+		return buffer.getShort(HEADER_SIZE + index * RECORD_SIZE + 14);
+	}
+
+	/* FUNC: lookup(GameLogic) -> SearchResult
+	 * DESC:
+	 * 	the book move of a position
+	 * RET:
+	 * 	the stored result, null if the position isn't in the book
+	 */
+	public SearchResult lookup(GameLogic game) {
+		if (!matches(game.getXLen(), game.getYLen(), game.getWinningSize())) {
+			return null;
+		}
+		int index = find(keyOf(game));
+		if (index < 0) {
+			return null;
+		}
+		int column = game.canonicalColumn(columnAt(index));
+		if (column < 0 || column >= game.getXLen() || !game.isPlayable(column)) {
+			return null;
+		}
+		SearchResult result = new SearchResult();
+		result.bestColumn = column;
+		result.score = scoreAt(index);
+		result.depth = depthAt(index);
+		return result;
+	}
+}
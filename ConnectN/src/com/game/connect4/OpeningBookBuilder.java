@@ -0,0 +1,230 @@
+package com.game.connect4;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This is the Opening Book Builder class,
+ * deep-searches every position up to a fixed ply and writes the answers
+ * into a book file, see OpeningBook for the layout.
+ * With --perfect the positions are solved by PerfectSolver instead, 7x6/4 only,
+ * and the book holds exact scores for PerfectSolver.setOpeningBook()
+ *
+ * Usage: --build-book [--board X Y N] [--ply P] [--depth D] [--threads T] [--perfect] [--out file]
+ *
+ * @author Yufan Lu
+ */
+public class OpeningBookBuilder {
+	private final static int TABLE_MEGABYTES = 64;
+
+	// Settings
+	private int xLen = 7;
+	private int yLen = 6;
+	private int winningLength = 4;
+	private int ply = 6;
+	private int depth = 12;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private boolean perfect = false;
+
+	// Positions to search and their results, in the same order
+	private final List<GameLogic> positions = new ArrayList<GameLogic>();
+	private long[] keys;
+	private int[] scores;
+	private int[] columns;
+	private int[] depths;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		OpeningBookBuilder builder = new OpeningBookBuilder();
+		String out = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--board")) {
+				builder.xLen = Integer.parseInt(args[++i]);
+				builder.yLen = Integer.parseInt(args[++i]);
+				builder.winningLength = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--ply")) {
+				builder.ply = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--depth")) {
+				builder.depth = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--threads")) {
+				builder.threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--perfect")) {
+				builder.perfect = true;
+			} else if (args[i].equals("--out")) {
+				out = args[++i];
+			} else if (!args[i].equals("--build-book")) {
+				System.out.println("Unknown option " + args[i]);
+				return;
+			}
+		}
+		if (builder.perfect && (builder.xLen != SolverPosition.WIDTH || builder.yLen != SolverPosition.HEIGHT ||
+				builder.winningLength != 4)) {
+			System.out.println("--perfect only works on 7x6/4");
+			return;
+		}
+		if (out == null) {
+			out = builder.perfect ?
+					OpeningBook.perfectFileName(builder.xLen, builder.yLen, builder.winningLength) :
+					OpeningBook.defaultFileName(builder.xLen, builder.yLen, builder.winningLength);
+		}
+		builder.build();
+		builder.write(out);
+		System.out.println("Wrote " + builder.keys.length + " positions to " + out);
+	}
+
+	/* FUNC: build() -> void
+	 * DESC:
+	 * 	collect the positions, then search them on all threads
+	 */
+	public void build() throws InterruptedException {
+		GameLogic root = new GameLogic(xLen, yLen, winningLength);
+		collect(root, new HashSet<Long>());
+		int count = positions.size();
+		if (perfect) {
+			System.out.println(String.format("Solving %d positions up to ply %d with %d threads", count, ply, threads));
+		} else {
+			System.out.println(String.format("Searching %d positions up to ply %d at depth %d with %d threads",
+					count, ply, depth, threads));
+		}
+		keys = new long[count];
+		scores = new int[count];
+		columns = new int[count];
+		depths = new int[count];
+		// the solvers share one table
+		final PerfectSolver solverTable = perfect ? new PerfectSolver() : null;
+
+		final AtomicInteger next = new AtomicInteger();
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++) {
+			Thread worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					NegamaxEngine engine = perfect ? null : new NegamaxEngine(TABLE_MEGABYTES);
+					PerfectSolver solver = perfect ? new PerfectSolver(solverTable) : null;
+					int index;
+					while ((index = next.getAndIncrement()) < positions.size()) {
+						GameLogic position = positions.get(index);
+						SearchResult result = perfect ? solver.bestColumn(position) : engine.search(position, 0, 0, depth);
+						if (perfect) {
+							// the solver looks positions up by its own key
+							SolverPosition solverPosition = SolverPosition.fromGame(position);
+							keys[index] = solverPosition.canonicalKey();
+							columns[index] = solverPosition.key() == keys[index] ?
+									result.bestColumn : xLen - 1 - result.bestColumn;
+						} else {
+							keys[index] = OpeningBook.keyOf(position);
+							columns[index] = position.canonicalColumn(result.bestColumn);
+						}
+						scores[index] = result.score;
+						depths[index] = perfect ? result.depth : depth;
+					}
+				}
+			}, "book-builder-" + t);
+			worker.start();
+			workers.add(worker);
+		}
+		for (int i = 0; i < workers.size(); i++) {
+			workers.get(i).join();
+		}
+		sort(0, count - 1);
+	}
+
+	/* FUNC: collect(GameLogic, Set<Long>) -> void
+	 * DESC:
+	 * 	depth first walk of every position before the book ply,
+	 * 	transpositions and mirror images only once
+	 */
+	private void collect(GameLogic game, Set<Long> seen) {
+		if (game.winner() != -1 || game.getMoveCount() >= ply ||
+				game.getMoveCount() == xLen * yLen || !seen.add(Long.valueOf(OpeningBook.keyOf(game)))) {
+			return;
+		}
+		positions.add(new GameLogic(game));
+		for (int column = 0; column < xLen; column++) {
+			if (game.play(column)) {
+				collect(game, seen);
+				game.undo();
+			}
+		}
+	}
+
+	/* FUNC: write(String) -> void
+	 * DESC:
+	 * 	write the header and the sorted records
+	 */
+	public void write(String fileName) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16));
+		try {
+			writeIntLE(out, OpeningBook.MAGIC);
+			writeIntLE(out, OpeningBook.VERSION);
+			writeIntLE(out, xLen);
+			writeIntLE(out, yLen);
+			writeIntLE(out, winningLength);
+			writeIntLE(out, keys.length);
+			for (int i = 0; i < keys.length; i++) {
+				out.writeLong(Long.reverseBytes(keys[i]));
+				writeIntLE(out, scores[i]);
+				out.writeShort(Short.reverseBytes((short) columns[i]));
+				out.writeShort(Short.reverseBytes((short) Math.min(depths[i], Short.MAX_VALUE)));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void writeIntLE(DataOutputStream out, int value) throws IOException {
+		out.writeInt(Integer.reverseBytes(value));
+	}
+
+	/* FUNC: sort(int, int) -> void
+	 * DESC:
+	 * 	quicksort of the records by key, moving the arrays together
+	 */
+	private void sort(int low, int high) {
+		while (low < high) {
+			long pivot = keys[(low + high) >>> 1];
+			int i = low;
+			int j = high;
+			while (i <= j) {
+				while (keys[i] < pivot) {
+					i++;
+				}
+				while (keys[j] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					swap(i++, j--);
+				}
+			}
+			// recurse into the smaller half, loop on the bigger one
+			if (j - low < high - i) {
+				sort(low, j);
+				low = i;
+			} else {
+				sort(i, high);
+				high = j;
+			}
+		}
+	}
+
+	private void swap(int a, int b) {
+		long key = keys[a];
+		keys[a] = keys[b];
+		keys[b] = key;
+		int score = scores[a];
+		scores[a] = scores[b];
+		scores[b] = score;
+		int column = columns[a];
+		columns[a] = columns[b];
+		columns[b] = column;
+		int searched = depths[a];
+		depths[a] = depths[b];
+		depths[b] = searched;
+	}
+}
@@ -0,0 +1,170 @@
+package com.game.connect4;
+
+/**
+ * This is the Pair Statistics class,
+ * results of one bot against another over game pairs, the two games of a pair
+ * start from the same opening with the colours swapped. Pairs are counted by
+ * the first bot's points in them (0, 1/2, 1, 3/2 or 2), so the luck of an
+ * opening cancels out of the error bars instead of widening them.
+ * Elo is the logistic kind, the SPRT uses the usual normal approximation of
+ * the log-likelihood ratio over the pair scores. The variance behind both is
+ * taken with a small prior spread over the five pair scores, so a match that
+ * only ever goes one way still gets finite error bars and a deciding LLR
+ *
+ * @author Yufan Lu
+ */
+public class PairStatistics {
+	// Game results, as half points for the first bot
+	public final static int LOSS = 0;
+	public final static int DRAW = 1;
+	public final static int WIN = 2;
+	// Scores are kept this far off 0 and 1 so the Elo stays finite
+	private final static double SCORE_MARGIN = 0.001;
+	// Pseudo pairs added to each of the five pair scores in variance()
+	private final static double PRIOR_PAIRS = 0.25;
+
+	// pairs[k] -- pairs where the first bot made k half points
+	private final long[] pairs = new long[5];
+	// games[result] -- single games by result
+	private final long[] games = new long[3];
+
+	/* FUNC: add(int, int) -> void
+	 * DESC:
+	 * 	count a pair of games, results are LOSS, DRAW or WIN for the first bot
+	 */
+	public void add(int first, int second) {
+		pairs[first + second]++;
+		games[first]++;
+		games[second]++;
+	}
+
+	/* FUNC: add(PairStatistics, boolean) -> void
+	 * DESC:
+	 * 	count someone else's pairs too, from the second bot's side when flipped
+	 */
+	public void add(PairStatistics other, boolean flipped) {
+		for (int k = 0; k < 5; k++) {
+			pairs[flipped ? 4 - k : k] += other.pairs[k];
+		}
+		for (int result = 0; result < 3; result++) {
+			games[flipped ? 2 - result : result] += other.games[result];
+		}
+	}
+
+	public long getPairs() {
+		return pairs[0] + pairs[1] + pairs[2] + pairs[3] + pairs[4];
+	}
+
+	public long getWins() {
+		return games[WIN];
+	}
+
+	public long getDraws() {
+		return games[DRAW];
+	}
+
+	public long getLosses() {
+		return games[LOSS];
+	}
+
+	/* FUNC: score() -> double
+	 * DESC:
+	 * 	average points per game of the first bot, 0.5 before any game
+	 */
+	public double score() {
+		long count = getPairs();
+		if (count == 0) {
+			return 0.5;
+		}
+		double total = 0;
+		for (int k = 0; k < 5; k++) {
+			total += pairs[k] * (k / 4.0);
+		}
+		return total / count;
+	}
+
+	/* FUNC: variance() -> double
+	 * DESC:
+	 * 	variance of the per game score of a pair, with PRIOR_PAIRS more pairs of
+	 * 	every score so it stays above 0 however lopsided the pairs are
+	 */
+	private double variance() {
+		double count = 5 * PRIOR_PAIRS;
+		double sum = 0;
+		for (int k = 0; k < 5; k++) {
+			count += pairs[k];
+			sum += (pairs[k] + PRIOR_PAIRS) * (k / 4.0);
+		}
+		double mean = sum / count;
+		double total = 0;
+		for (int k = 0; k < 5; k++) {
+			double deviation = k / 4.0 - mean;
+			total += (pairs[k] + PRIOR_PAIRS) * deviation * deviation;
+		}
+		return total / count;
+	}
+
+	/* FUNC: elo() -> double
+	 * DESC:
+	 * 	Elo difference of the first bot over the second
+	 */
+	public double elo() {
+		return eloOf(score());
+	}
+
+	/* FUNC: eloError() -> double
+	 * DESC:
+	 * 	half the width of the 95% confidence interval of elo(), infinite before any pair
+	 */
+	public double eloError() {
+		long count = getPairs();
+		if (count == 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double error = 1.96 * Math.sqrt(variance() / count);
+		return (eloOf(score() + error) - eloOf(score() - error)) / 2;
+	}
+
+	/* FUNC: llr(double, double) -> double
+	 * DESC:
+	 * 	log-likelihood ratio of the first bot being elo1 stronger against it being elo0 stronger
+	 */
+	public double llr(double elo0, double elo1) {
+		long count = getPairs();
+		if (count == 0) {
+			return 0.0;
+		}
+		double variance = variance();
+		double score0 = scoreOf(elo0);
+		double score1 = scoreOf(elo1);
+		return count * (score1 - score0) * (2 * score() - score0 - score1) / (2 * variance);
+	}
+
+	/* FUNC: sprtBounds(double, double) -> double[]
+	 * DESC:
+	 * 	the LLR bounds of an SPRT, {accept H0 at or below, accept H1 at or above}
+	 * ARGS:
+	 * 	alpha -- false positive rate
+	 * 	beta  -- false negative rate
+	 */
+	public static double[] sprtBounds(double alpha, double beta) {
+		return new double[] { Math.log(beta / (1 - alpha)), Math.log((1 - beta) / alpha) };
+	}
+
+	public static double eloOf(double score) {
+		score = Math.max(SCORE_MARGIN, Math.min(1 - SCORE_MARGIN, score));
+		return -400 * Math.log10(1 / score - 1);
+	}
+
+	public static double scoreOf(double elo) {
+		return 1 / (1 + Math.pow(10, -elo / 400));
+	}
+
+	@Override
+	public String toString() {
+		double error = eloError();
+		return String.format("+%d =%d -%d, %.1f%%, Elo %+.1f +- %s",
+				getWins(), getDraws(), getLosses(), 100 * score(), elo(),
+				Double.isInfinite(error) ? "inf" : String.format("%.1f", error));
+	}
+}
@@ -0,0 +1,396 @@
+package com.game.connect4;
+
+import java.util.Arrays;
+
+/**
+ * This is the Perfect Solver class,
+ * exact game-theoretic values of standard 7x6 connect 4 positions.
+ * A score is positive when the side to move wins: (43 - moves) / 2 for a win
+ * with its last disc as the moves-th disc of the game, 0 for a draw, negative when
+ * it loses. solve() narrows the score down with null-window negamax searches,
+ * the search never plays into a cell under an opponent's winning cell and
+ * remembers bounds in a fixed table. The weak mode only tells win, draw or loss.
+ * Latency, single core: late positions take milliseconds, but the search grows
+ * fast towards the opening, measured worst cases without a book are about 1.6s
+ * at 8 plies, 12s at 6 and over a minute at 4. An exact book of the early plies
+ * (--build-book --perfect) answers those: solve(), bestColumn() and the search
+ * itself look every position up to the book's last ply in it. setTimeLimit()
+ * bounds a call on top of that, a call that runs out says so in isTimedOut()
+ * and its answer isn't exact
+ *
+ * @author Yufan Lu
+ */
+public class PerfectSolver {
+	// Constants
+	private final static int WIDTH = SolverPosition.WIDTH;
+	private final static int CELLS = SolverPosition.CELLS;
+	private final static int MIN_SCORE = SolverPosition.MIN_SCORE;
+	private final static int MAX_SCORE = SolverPosition.MAX_SCORE;
+	// Prime sized table, 8M entries of key << 8 | value
+	private final static int TABLE_SIZE = 8388593;
+	private final static int[] COLUMN_ORDER = { 3, 2, 4, 1, 5, 0, 6 };
+	// Nodes between two looks at the clock
+	private final static int CLOCK_INTERVAL = 4096;
+
+	private final long[] table;
+	private long nodes;
+	private OpeningBook book;
+	// Moves of the deepest book position, -1 without a book
+	private int bookPlies = -1;
+	private long timeLimitMillis;
+	private long deadline;
+	private boolean aborted;
+	// Per ply move lists, so ordering the moves doesn't allocate
+	private final long[][] sortedMoves = new long[CELLS + 1][WIDTH];
+	private final int[][] sortedScores = new int[CELLS + 1][WIDTH];
+
+	public PerfectSolver() {
+		this(TABLE_SIZE);
+	}
+
+	/*
+	 * FUNC: Constructor(int)
+	 * DESC:
+	 * 	Constructor for the PerfectSolver
+	 * ARGS:
+	 * 	tableEntries -- size of the transposition table, best a prime
+	 */
+	public PerfectSolver(int tableEntries) {
+		table = new long[tableEntries];
+	}
+
+	/*
+	 * FUNC: Constructor(PerfectSolver)
+	 * DESC:
+	 * 	Constructor for a solver sharing its table with another one, so solvers on
+	 * 	several threads cost one table. No locks are needed: an entry is one long
+	 * 	holding its own key, so a torn write either fails the key check or mixes
+	 * 	two bounds that were both stored for that key
+	 * ARGS:
+	 * 	tableOwner -- the solver whose table to use
+	 */
+	public PerfectSolver(PerfectSolver tableOwner) {
+		table = tableOwner.table;
+	}
+
+	public long getNodeCount() {
+		return nodes;
+	}
+
+	/* FUNC: setOpeningBook(OpeningBook) -> void
+	 * DESC:
+	 * 	exact scores for the early plies, written by OpeningBookBuilder --perfect
+	 * 	and keyed by SolverPosition.canonicalKey(), null for none
+	 */
+	public void setOpeningBook(OpeningBook openingBook) {
+		book = openingBook;
+		bookPlies = -1;
+		if (book != null) {
+			// a perfect book's depth is the number of empty cells
+			for (int i = 0; i < book.size(); i++) {
+				bookPlies = Math.max(bookPlies, CELLS - book.depthAt(i));
+			}
+		}
+	}
+
+	/* FUNC: isTimedOut() -> boolean
+	 * DESC:
+	 * 	whether the last solve(), analyze() or bestColumn() call ran out of time,
+	 * 	the scores it gave are not exact then
+	 */
+	public boolean isTimedOut() {
+		return aborted;
+	}
+
+	/* FUNC: setTimeLimit(long) -> void
+	 * DESC:
+	 * 	wall clock budget of each solve(), analyze() and bestColumn() call, 0 for none
+	 */
+	public void setTimeLimit(long millis) {
+		timeLimitMillis = millis;
+	}
+
+	public void reset() {
+		nodes = 0;
+		Arrays.fill(table, 0L);
+	}
+
+	/* FUNC: solve(SolverPosition, boolean) -> int
+	 * DESC:
+	 * 	exact score of the position
+	 * ARG:
+	 * 	position -- position to solve, not changed
+	 * 	weak     -- only tell the sign of the score: 1 win, 0 draw, -1 loss
+	 * RET:
+	 * 	the score for the side to move, 0 and isTimedOut() if the time limit ran out
+	 */
+	public int solve(SolverPosition position, boolean weak) {
+		startClock();
+		return solveWithinClock(position, weak);
+	}
+
+	private void startClock() {
+		deadline = timeLimitMillis > 0 ? System.nanoTime() + timeLimitMillis * 1000000L : Long.MAX_VALUE;
+		aborted = false;
+	}
+
+	private int solveWithinClock(SolverPosition position, boolean weak) {
+		if (position.canWinNext()) {
+			return weak ? 1 : (CELLS + 1 - position.moves) / 2;
+		}
+		int index = findInBook(position);
+		if (index >= 0) {
+			return weak ? Integer.signum(book.scoreAt(index)) : book.scoreAt(index);
+		}
+		int min = -(CELLS - position.moves) / 2;
+		int max = (CELLS + 1 - position.moves) / 2;
+		if (weak) {
+			min = -1;
+			max = 1;
+		}
+		SolverPosition work = new SolverPosition(position);
+		while (min < max) {
+			// null window searches, probing near zero first where the cuts are cheap
+			int med = min + (max - min) / 2;
+			if (med <= 0 && min / 2 < med) {
+				med = min / 2;
+			} else if (med >= 0 && max / 2 > med) {
+				med = max / 2;
+			}
+			int r = negamax(work, med, med + 1);
+			if (aborted) {
+				return 0;
+			}
+			if (r <= med) {
+				max = r;
+			} else {
+				min = r;
+			}
+		}
+		// the null window searches may prove more than the weak window asked for
+		return weak ? Integer.signum(min) : min;
+	}
+
+	public int[] analyze(SolverPosition position, boolean weak) {
+		return analyze(position, weak, null);
+	}
+
+	/* FUNC: analyze(SolverPosition, boolean, boolean[]) -> int[]
+	 * DESC:
+	 * 	score of every column
+	 * ARG:
+	 * 	solved -- set to false for the columns the time limit didn't leave room for, null if not needed
+	 * RET:
+	 * 	score for the side to move after playing the column, Integer.MIN_VALUE if it's full,
+	 * 	0 for the unsolved ones
+	 */
+	public int[] analyze(SolverPosition position, boolean weak, boolean[] solved) {
+		startClock();
+		int[] scores = new int[WIDTH];
+		boolean timedOut = false;
+		for (int column = 0; column < WIDTH; column++) {
+			if (solved != null) {
+				solved[column] = true;
+			}
+			if (!position.canPlay(column)) {
+				scores[column] = Integer.MIN_VALUE;
+			} else if (position.isWinningMove(column)) {
+				scores[column] = weak ? 1 : (CELLS + 1 - position.moves) / 2;
+			} else {
+				SolverPosition next = new SolverPosition(position);
+				next.play(column);
+				int score = aborted ? 0 : solveWithinClock(next, weak);
+				if (aborted) {
+					timedOut = true;
+					if (solved != null) {
+						solved[column] = false;
+					}
+				}
+				scores[column] = -score;
+			}
+		}
+		// a book hit after the clock ran out mustn't hide that
+		aborted = timedOut;
+		return scores;
+	}
+
+	/* FUNC: bestColumn(GameLogic) -> SearchResult
+	 * DESC:
+	 * 	a perfect move for a GameLogic position, centre columns win ties.
+	 * 	Book positions are answered right away. If the time limit runs out the
+	 * 	result isn't exact: isTimedOut() is set, the depth is 0 and the column is
+	 * 	the best one proven to draw or win, or else the centre-most unsolved one
+	 */
+	public SearchResult bestColumn(GameLogic game) {
+		SolverPosition position = SolverPosition.fromGame(game);
+		int index = findInBook(position);
+		if (index >= 0) {
+			aborted = false;
+			SearchResult result = new SearchResult();
+			// book columns are for the canonical orientation
+			int column = book.columnAt(index);
+			result.bestColumn = position.key() == position.canonicalKey() ? column : WIDTH - 1 - column;
+			result.score = book.scoreAt(index);
+			result.depth = CELLS - game.getMoveCount();
+			return result;
+		}
+		long start = System.nanoTime();
+		long startNodes = nodes;
+		boolean[] solved = new boolean[WIDTH];
+		int[] scores = analyze(position, false, solved);
+		SearchResult result = new SearchResult();
+		result.score = Integer.MIN_VALUE;
+		int unknownColumn = -1;
+		for (int i = 0; i < WIDTH; i++) {
+			int column = COLUMN_ORDER[i];
+			if (!solved[column]) {
+				if (unknownColumn < 0) {
+					unknownColumn = column;
+				}
+			} else if (scores[column] > result.score) {
+				result.score = scores[column];
+				result.bestColumn = column;
+			}
+		}
+		result.depth = CELLS - game.getMoveCount();
+		if (unknownColumn >= 0) {
+			// out of time: a proven draw or win beats an unsolved column, a proven loss doesn't
+			if (result.score < 0) {
+				result.score = 0;
+				result.bestColumn = unknownColumn;
+			}
+			result.depth = 0;
+		}
+		result.nodes = nodes - startNodes;
+		result.timeMillis = (System.nanoTime() - start) / 1000000L;
+		return result;
+	}
+
+	/* FUNC: negamax(SolverPosition, int, int) -> int
+	 * DESC:
+	 * 	alpha-beta search of a position where the side to move can't win right away
+	 * RET:
+	 * 	the exact score if it's inside (alpha, beta), otherwise a bound on the far side
+	 */
+	private int negamax(SolverPosition position, int alpha, int beta) {
+		nodes++;
+		if ((nodes & (CLOCK_INTERVAL - 1)) == 0 && System.nanoTime() > deadline) {
+			aborted = true;
+		}
+		if (aborted) {
+			return alpha;
+		}
+		long next = position.possibleNonLosingMoves();
+		if (next == 0) {
+			// every move hands the opponent a win
+			return -(CELLS - position.moves) / 2;
+		}
+		if (position.moves >= CELLS - 2) {
+			return 0;
+		}
+		int min = -(CELLS - 2 - position.moves) / 2;
+		if (alpha < min) {
+			alpha = min;
+			if (alpha >= beta) {
+				return alpha;
+			}
+		}
+		int max = (CELLS - 1 - position.moves) / 2;
+		if (position.moves <= bookPlies) {
+			int index = findInBook(position);
+			if (index >= 0) {
+				// exact, so good for any window
+				return book.scoreAt(index);
+			}
+		}
+		long key = position.key();
+		int stored = probe(key);
+		if (stored != 0) {
+			if (stored > MAX_SCORE - MIN_SCORE + 1) {
+				// lower bound
+				min = stored + 2 * MIN_SCORE - MAX_SCORE - 2;
+				if (alpha < min) {
+					alpha = min;
+					if (alpha >= beta) {
+						return alpha;
+					}
+				}
+			} else {
+				// upper bound
+				max = stored + MIN_SCORE - 1;
+			}
+		}
+		if (beta > max) {
+			beta = max;
+			if (alpha >= beta) {
+				return beta;
+			}
+		}
+
+		// order the moves by the threats they create, centre first on ties
+		int ply = position.moves;
+		long[] moves = sortedMoves[ply];
+		int[] scores = sortedScores[ply];
+		int count = 0;
+		for (int i = WIDTH - 1; i >= 0; i--) {
+			long move = next & SolverPosition.columnMask(COLUMN_ORDER[i]);
+			if (move != 0) {
+				int score = position.moveScore(move);
+				int pos = count++;
+				while (pos > 0 && scores[pos - 1] > score) {
+					moves[pos] = moves[pos - 1];
+					scores[pos] = scores[pos - 1];
+					pos--;
+				}
+				moves[pos] = move;
+				scores[pos] = score;
+			}
+		}
+
+		long current = position.current;
+		long mask = position.mask;
+		while (count > 0) {
+			position.playMove(moves[--count]);
+			int score = -negamax(position, -beta, -alpha);
+			position.current = current;
+			position.mask = mask;
+			position.moves = ply;
+			if (aborted) {
+				// nothing proven, leave the table alone
+				return alpha;
+			}
+			if (score >= beta) {
+				store(key, score + MAX_SCORE - 2 * MIN_SCORE + 2);
+				return score;
+			}
+			if (score > alpha) {
+				alpha = score;
+			}
+		}
+		store(key, alpha - MIN_SCORE + 1);
+		return alpha;
+	}
+
+	/* FUNC: findInBook(SolverPosition) -> int
+	 * DESC:
+	 * 	book record of the position, -1 without a book or when it's deeper than the book
+	 */
+	private int findInBook(SolverPosition position) {
+		if (position.moves > bookPlies) {
+			return -1;
+		}
+		return book.find(position.canonicalKey());
+	}
+
+	private int probe(long key) {
+		long entry = table[(int) (key % table.length)];
+		if ((entry >>> 8) == key) {
+			return (int) (entry & 0xFF);
+		}
+		return 0;
+	}
+
+	private void store(long key, int value) {
+		table[(int) (key % table.length)] = (key << 8) | value;
+	}
+}
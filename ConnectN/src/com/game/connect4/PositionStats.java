@@ -0,0 +1,105 @@
+package com.game.connect4;
+
+import java.util.Arrays;
+
+/**
+ * This is the Position Stats class,
+ * what a GameArchive knows about one position: how many games reached it,
+ * and for every column played next, how those games ended.
+ * Results are the GameRecord RESULT_ codes
+ *
+ * @author Yufan Lu
+ */
+public class PositionStats {
+	private final int xLen;
+	// outcomes[column][result], row xLen holds the games that ended in the position
+	private final long[][] outcomes;
+	// Offset of one game in the records file per row, -1 if none
+	private final long[] exampleGames;
+
+	public PositionStats(int xLen) {
+		this.xLen = xLen;
+		outcomes = new long[xLen + 1][4];
+		exampleGames = new long[xLen + 1];
+		Arrays.fill(exampleGames, -1L);
+	}
+
+	/* FUNC: add(int, int, long, long) -> void
+	 * DESC:
+	 * 	count games, column -1 for games that ended in the position
+	 */
+	void add(int column, int result, long games, long exampleGame) {
+		int row = column < 0 ? xLen : column;
+		outcomes[row][result] += games;
+		if (exampleGames[row] < 0 || exampleGame < exampleGames[row]) {
+			exampleGames[row] = exampleGame;
+		}
+	}
+
+	/* FUNC: getReached() -> long
+	 * DESC:
+	 * 	number of games that went through the position
+	 */
+	public long getReached() {
+		long total = 0;
+		for (int row = 0; row <= xLen; row++) {
+			for (int result = 0; result < 4; result++) {
+				total += outcomes[row][result];
+			}
+		}
+		return total;
+	}
+
+	/* FUNC: getGames(int) -> long
+	 * DESC:
+	 * 	games that played the column here, column xLen for the ones that ended here
+	 */
+	public long getGames(int column) {
+		long total = 0;
+		for (int result = 0; result < 4; result++) {
+			total += outcomes[column][result];
+		}
+		return total;
+	}
+
+	public long getOutcome(int column, int result) {
+		return outcomes[column][result];
+	}
+
+	/* FUNC: getEnded(int) -> long
+	 * DESC:
+	 * 	games that stopped in the position with the given result
+	 */
+	public long getEnded(int result) {
+		return outcomes[xLen][result];
+	}
+
+	/* FUNC: getExampleGame(int) -> long
+	 * DESC:
+	 * 	records file offset of a game that played the column here, -1 if none,
+	 * 	see GameArchive.readGame()
+	 */
+	public long getExampleGame(int column) {
+		return exampleGames[column];
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		text.append(String.format("reached %d times%n", getReached()));
+		for (int column = 0; column <= xLen; column++) {
+			long games = getGames(column);
+			if (games == 0) {
+				continue;
+			}
+			text.append(String.format("%8s: %10d games, first %6.2f%%, second %6.2f%%, draw %6.2f%%, unfinished %6.2f%%%n",
+					column < xLen ? "column " + column : "ended",
+					games,
+					outcomes[column][GameRecord.RESULT_FIRST_PLAYER] * 100.0 / games,
+					outcomes[column][GameRecord.RESULT_SECOND_PLAYER] * 100.0 / games,
+					outcomes[column][GameRecord.RESULT_DRAW] * 100.0 / games,
+					outcomes[column][GameRecord.RESULT_UNFINISHED] * 100.0 / games));
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,39 @@
+package com.game.connect4;
+
+/**
+ * This is the Search Result class,
+ * what an engine reports back for the position it was asked about
+ *
+ * @author Yufan Lu
+ */
+public class SearchResult {
+	// Column to play, -1 if there's no legal move
+	public int bestColumn = -1;
+	// Score for the side to move, see NegamaxEngine.WIN_SCORE
+	public int score;
+	// Deepest fully searched depth
+	public int depth;
+	public long nodes;
+	public long timeMillis;
+	// Move ordering quality: cutoffs, and how many of them came from the first move tried
+	public long cutoffs;
+	public long firstMoveCutoffs;
+
+	/* FUNC: firstMoveCutoffRate() -> double
+	 * DESC:
+	 * 	share of the cutoffs made by the first move tried, 0 when there were none
+	 */
+	public double firstMoveCutoffRate() {
+		return cutoffs == 0 ? 0.0 : (double) firstMoveCutoffs / cutoffs;
+	}
+
+	@Override
+	public String toString() {
+		String text = String.format("column %d, score %d, depth %d, %d nodes in %d ms",
+				bestColumn, score, depth, nodes, timeMillis);
+		if (cutoffs > 0) {
+			text += String.format(", %.1f%% first-move cutoffs", 100.0 * firstMoveCutoffRate());
+		}
+		return text;
+	}
+}
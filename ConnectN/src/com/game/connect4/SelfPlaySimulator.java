@@ -0,0 +1,262 @@
+package com.game.connect4;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This is the Self Play Simulator class,
+ * plays bot against bot straight on GameLogic across a pool of threads,
+ * without starting libGDX. The bots swap colours every game, game i runs
+ * with seed + i so any single game can be replayed.
+ * A game stops as a draw once no line can be completed any more, unless
+ * --play-out asks for it to be played until the board is full.
+ * With --record every game is also written to a GameRecord file.
+ * Aggregate results are printed while the games run and once at the end
+ *
+ * Usage: --simulate [--games N] [--threads T] [--seed S] [--board X Y N]
+ * 	[--bot1 SPEC] [--bot2 SPEC] [--report SECONDS] [--play-out]
+ * 	[--record FILE], see BotFactory for the specs
+ *
+ * @author Yufan Lu
+ */
+public class SelfPlaySimulator {
+	// Games are claimed and counted in batches to keep the shared counters cool
+	private final static int BATCH = 256;
+
+	// Settings
+	private int xLen = 7;
+	private int yLen = 6;
+	private int winningLength = 4;
+	private long games = 100000;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private long seed = 1;
+	private String bot1 = "random";
+	private String bot2 = "random";
+	private long reportMillis = 1000;
+	// Play dead positions on until the board is full instead of calling them drawn
+	private boolean playOut = false;
+	private String recordFile;
+	// Shared by the workers' record writers, null when not recording
+	private FileChannel recordChannel;
+
+	// Shared results
+	private final AtomicLong nextGame = new AtomicLong();
+	// What the first worker to fail threw, the run stops then
+	private volatile Exception failure;
+	private final AtomicLong bot1Wins = new AtomicLong();
+	private final AtomicLong bot2Wins = new AtomicLong();
+	private final AtomicLong firstPlayerWins = new AtomicLong();
+	private final AtomicLong draws = new AtomicLong();
+	private final AtomicLong totalMoves = new AtomicLong();
+	private AtomicLongArray lengths;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		SelfPlaySimulator simulator = new SelfPlaySimulator();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--games")) {
+				simulator.games = Long.parseLong(args[++i]);
+			} else if (args[i].equals("--threads")) {
+				simulator.threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--seed")) {
+				simulator.seed = Long.parseLong(args[++i]);
+			} else if (args[i].equals("--board")) {
+				simulator.xLen = Integer.parseInt(args[++i]);
+				simulator.yLen = Integer.parseInt(args[++i]);
+				simulator.winningLength = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--bot1")) {
+				simulator.bot1 = args[++i];
+			} else if (args[i].equals("--bot2")) {
+				simulator.bot2 = args[++i];
+			} else if (args[i].equals("--report")) {
+				simulator.reportMillis = (long) (Double.parseDouble(args[++i]) * 1000);
+			} else if (args[i].equals("--play-out")) {
+				simulator.playOut = true;
+			} else if (args[i].equals("--record")) {
+				simulator.recordFile = args[++i];
+			} else if (!args[i].equals("--simulate")) {
+				System.out.println("Unknown option " + args[i]);
+				return;
+			}
+		}
+		// fail early on a bad spec rather than in every thread
+		BotFactory.create(simulator.bot1, simulator.xLen, simulator.yLen, simulator.winningLength);
+		BotFactory.create(simulator.bot2, simulator.xLen, simulator.yLen, simulator.winningLength);
+		simulator.run();
+	}
+
+	/* FUNC: run() -> void
+	 * DESC:
+	 * 	play all the games, reporting progress until the last thread is done
+	 */
+	public void run() throws IOException, InterruptedException {
+		lengths = new AtomicLongArray(xLen * yLen + 1);
+		if (recordFile != null) {
+			recordChannel = new FileOutputStream(recordFile).getChannel();
+			new GameRecordWriter(recordChannel, xLen, yLen, winningLength);
+		}
+		System.out.println(String.format("Simulating %d games of %s vs %s on %dx%d/%d with %d threads, seed %d",
+				games, bot1, bot2, xLen, yLen, winningLength, threads, seed));
+		long start = System.nanoTime();
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int i = 0; i < threads; i++) {
+			Thread worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						playGames();
+					} catch (IOException e) {
+						fail(e);
+					} catch (RuntimeException e) {
+						fail(e);
+					}
+				}
+			}, "simulator-" + i);
+			worker.start();
+			workers.add(worker);
+		}
+		for (int i = 0; i < workers.size(); i++) {
+			Thread worker = workers.get(i);
+			while (worker.isAlive()) {
+				worker.join(reportMillis);
+				if (worker.isAlive()) {
+					report(start, false);
+				}
+			}
+		}
+		if (recordChannel != null) {
+			recordChannel.close();
+		}
+		if (failure != null) {
+			report(start, false);
+			System.out.println("Simulation failed, the counts above are partial");
+			if (failure instanceof IOException) {
+				throw (IOException) failure;
+			}
+			throw (RuntimeException) failure;
+		}
+		report(start, true);
+		if (recordChannel != null) {
+			System.out.println("Recorded the games to " + recordFile);
+		}
+	}
+
+	/* FUNC: fail(Exception) -> void
+	 * DESC:
+	 * 	keep the first failure of a worker and stop the others handing out games
+	 */
+	private synchronized void fail(Exception e) {
+		if (failure == null) {
+			failure = e;
+		}
+		nextGame.set(games);
+	}
+
+	/* FUNC: playGames() -> void
+	 * DESC:
+	 * 	one worker thread, keeps claiming batches of games until none are left
+	 */
+	private void playGames() throws IOException {
+		GameLogic game = new GameLogic(xLen, yLen, winningLength);
+		Bot[] bots = { BotFactory.create(bot1, xLen, yLen, winningLength),
+				BotFactory.create(bot2, xLen, yLen, winningLength) };
+		GameRecordWriter recorder = recordChannel == null ? null : GameRecordWriter.appendTo(recordChannel, xLen);
+		long[] localLengths = new long[xLen * yLen + 1];
+		while (true) {
+			long first = nextGame.getAndAdd(BATCH);
+			if (first >= games) {
+				break;
+			}
+			long last = Math.min(games, first + BATCH);
+			long wins1 = 0;
+			long wins2 = 0;
+			long firstWins = 0;
+			long drawn = 0;
+			long moves = 0;
+			for (long index = first; index < last; index++) {
+				// bot1 moves first in even games
+				int bot1Index = (int) (index & 1);
+				bots[0].newGame(seed + index);
+				bots[1].newGame(~(seed + index));
+				game.reset();
+				while (game.status() == GameLogic.STATUS_ONGOING && (playOut || !game.isDeadPosition())) {
+					int turn = game.getMoveCount() & 1;
+					Bot bot = bots[turn == bot1Index ? 0 : 1];
+					game.play(bot.chooseColumn(game));
+				}
+				int winner = game.winner();
+				if (winner == -1) {
+					drawn++;
+				} else {
+					boolean firstWon = winner == GameLogic.GRID_FIRST_PLAYER;
+					if (firstWon) {
+						firstWins++;
+					}
+					if (firstWon == (bot1Index == 0)) {
+						wins1++;
+					} else {
+						wins2++;
+					}
+				}
+				moves += game.getMoveCount();
+				localLengths[game.getMoveCount()]++;
+				if (recorder != null) {
+					recorder.write(game);
+				}
+			}
+			bot1Wins.addAndGet(wins1);
+			bot2Wins.addAndGet(wins2);
+			firstPlayerWins.addAndGet(firstWins);
+			draws.addAndGet(drawn);
+			totalMoves.addAndGet(moves);
+			for (int i = 0; i < localLengths.length; i++) {
+				if (localLengths[i] != 0) {
+					lengths.addAndGet(i, localLengths[i]);
+					localLengths[i] = 0;
+				}
+			}
+		}
+		if (recorder != null) {
+			recorder.flush();
+		}
+	}
+
+	/* FUNC: report(long, boolean) -> void
+	 * DESC:
+	 * 	print the results so far, with the length distribution at the end
+	 */
+	private void report(long start, boolean done) {
+		long wins1 = bot1Wins.get();
+		long wins2 = bot2Wins.get();
+		long drawn = draws.get();
+		long played = wins1 + wins2 + drawn;
+		double seconds = (System.nanoTime() - start) / 1e9;
+		if (played == 0) {
+			System.out.println(String.format("%.1fs: no games finished yet", seconds));
+			return;
+		}
+		System.out.println(String.format(
+				"%.1fs: %d games, %.0f games/s, %s %.2f%%, %s %.2f%%, draws %.2f%%, first player %.2f%%, avg length %.2f",
+				seconds, played, played / seconds,
+				bot1, wins1 * 100.0 / played, bot2, wins2 * 100.0 / played, drawn * 100.0 / played,
+				firstPlayerWins.get() * 100.0 / played, totalMoves.get() / (double) played));
+		if (!done) {
+			return;
+		}
+		System.out.println("Game length distribution (moves: games):");
+		long cumulative = 0;
+		for (int i = 0; i < lengths.length(); i++) {
+			long count = lengths.get(i);
+			if (count == 0) {
+				continue;
+			}
+			cumulative += count;
+			System.out.println(String.format("%6d: %10d  %6.2f%%  cumulative %6.2f%%",
+					i, count, count * 100.0 / played, cumulative * 100.0 / played));
+		}
+	}
+}
@@ -0,0 +1,320 @@
+package com.game.connect4;
+
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This is the Sharded Session Manager class,
+ * owns the GameSessions of a GameServer, split over a fixed number of shards.
+ * Each shard is one event loop thread with a plain HashMap of its sessions, a
+ * session is pinned to shard id % shards for its whole life. Callers never
+ * touch a session: they post a task to the shard's lock free multi-producer
+ * queue and park until the shard thread has run it and unparked them, so
+ * moves take no locks and a session's state stays with one thread and core.
+ * After close() calls throw IllegalStateException instead of waiting for a
+ * shard that's gone
+ *
+ * @author Yufan Lu
+ */
+public class ShardedSessionManager {
+	private final Shard[] shards;
+	private final AtomicLong nextSessionId = new AtomicLong(1);
+	private volatile boolean closed;
+
+	/*
+	 * FUNC: Constructor(int)
+	 * DESC:
+	 * 	start the shard threads
+	 * ARG:
+	 * 	shardCount -- number of event loops, about one per core
+	 */
+	public ShardedSessionManager(int shardCount) {
+		shards = new Shard[Math.max(1, shardCount)];
+		for (int i = 0; i < shards.length; i++) {
+			shards[i] = new Shard(i);
+			shards[i].thread.start();
+		}
+	}
+
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	/* FUNC: getSessionCount() -> int
+	 * DESC:
+	 * 	sessions over all shards, each shard's count may be a task behind
+	 */
+	public int getSessionCount() {
+		int total = 0;
+		for (int i = 0; i < shards.length; i++) {
+			total += shards[i].sessionCount;
+		}
+		return total;
+	}
+
+	/* FUNC: create(int, int, int) -> long
+	 * DESC:
+	 * 	start a game with one client
+	 * RET:
+	 * 	the session id
+	 */
+	public long create(final int xLen, final int yLen, final int winningLength) {
+		final long id = nextSessionId.getAndIncrement();
+		call(new Task<String>(id) {
+			@Override
+			String run(Shard shard, GameSession session) {
+				GameSession created = new GameSession(id, xLen, yLen, winningLength);
+				created.join();
+				shard.add(created);
+				return "";
+			}
+		});
+		return id;
+	}
+
+	/* FUNC: join(long) -> boolean
+	 * DESC:
+	 * 	add a client to a game
+	 * RET:
+	 * 	false if there is no such game
+	 */
+	public boolean join(long id) {
+		return call(new Task<Boolean>(id) {
+			@Override
+			Boolean run(Shard shard, GameSession session) {
+				return session != null && session.join();
+			}
+		});
+	}
+
+	/* FUNC: leave(long) -> void
+	 * DESC:
+	 * 	remove a client from a game, ending it with its last client
+	 */
+	public void leave(long id) {
+		call(new Task<String>(id) {
+			@Override
+			String run(Shard shard, GameSession session) {
+				if (session != null && session.leave()) {
+					shard.remove(session);
+				}
+				return "";
+			}
+		});
+	}
+
+	/* FUNC: play(long, int) -> String
+	 * DESC:
+	 * 	drop a disc in a game, see GameSession.play()
+	 */
+	public String play(long id, final int column) {
+		return call(new Task<String>(id) {
+			@Override
+			String run(Shard shard, GameSession session) {
+				return session == null ? noSession(sessionId) : session.play(column);
+			}
+		});
+	}
+
+	public String undo(long id) {
+		return call(new Task<String>(id) {
+			@Override
+			String run(Shard shard, GameSession session) {
+				return session == null ? noSession(sessionId) : session.undo();
+			}
+		});
+	}
+
+	public String status(long id) {
+		return call(new Task<String>(id) {
+			@Override
+			String run(Shard shard, GameSession session) {
+				return session == null ? noSession(sessionId) : session.status();
+			}
+		});
+	}
+
+	public String show(long id) {
+		return call(new Task<String>(id) {
+			@Override
+			String run(Shard shard, GameSession session) {
+				return session == null ? noSession(sessionId) : session.show();
+			}
+		});
+	}
+
+	/* FUNC: snapshot(long) -> BoardSnapshot
+	 * DESC:
+	 * 	a read-only copy of a game that other threads can use, null if there is no such game
+	 */
+	public BoardSnapshot snapshot(long id) {
+		return call(new Task<BoardSnapshot>(id) {
+			@Override
+			BoardSnapshot run(Shard shard, GameSession session) {
+				return session == null ? null : session.snapshot();
+			}
+		});
+	}
+
+	/* FUNC: close() -> void
+	 * DESC:
+	 * 	stop the shard threads once their queues are empty, later calls are refused
+	 */
+	public void close() {
+		closed = true;
+		for (int i = 0; i < shards.length; i++) {
+			shards[i].running = false;
+			LockSupport.unpark(shards[i].thread);
+		}
+	}
+
+	private static String noSession(long id) {
+		return "ERR no game " + id;
+	}
+
+	/* FUNC: call(Task) -> T
+	 * DESC:
+	 * 	run a task on its session's shard and wait for it
+	 * RET:
+	 * 	what the task returned, what it threw is thrown again here,
+	 * 	IllegalStateException once the manager is closed
+	 */
+	private <T> T call(Task<T> task) {
+		if (closed) {
+			throw new IllegalStateException("server closed");
+		}
+		Shard shard = shards[(int) (task.sessionId % shards.length)];
+		shard.inbox.offer(task);
+		if (shard.idle) {
+			LockSupport.unpark(shard.thread);
+		}
+		// the shard fails what it finds in its queue on the way out,
+		// a task that missed that is still ours to take back
+		if (shard.stopped && shard.inbox.remove(task)) {
+			throw new IllegalStateException("server closed");
+		}
+		return task.await();
+	}
+
+	/**
+	 * A piece of work for the shard owning a session, run on the shard thread
+	 */
+	private abstract static class Task<T> {
+		final long sessionId;
+		private final Thread caller = Thread.currentThread();
+		// Replies can be null, so completion has its own flag, which also publishes the reply
+		private T reply;
+		private RuntimeException failure;
+		private volatile boolean done;
+
+		Task(long sessionId) {
+			this.sessionId = sessionId;
+		}
+
+		/* FUNC: run(Shard, GameSession) -> String
+		 * DESC:
+		 * 	the work, session is null if the shard has no such session
+		 */
+		abstract T run(Shard shard, GameSession session);
+
+		/* FUNC: execute(Shard) -> void
+		 * DESC:
+		 * 	run on the shard thread and wake the caller up
+		 */
+		void execute(Shard shard) {
+			try {
+				reply = run(shard, shard.sessions.get(sessionId));
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+			done = true;
+			LockSupport.unpark(caller);
+		}
+
+		/* FUNC: fail(RuntimeException) -> void
+		 * DESC:
+		 * 	wake the caller up with an error instead of running
+		 */
+		void fail(RuntimeException e) {
+			failure = e;
+			done = true;
+			LockSupport.unpark(caller);
+		}
+
+		T await() {
+			while (!done) {
+				LockSupport.park(this);
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			return reply;
+		}
+	}
+
+	/**
+	 * One event loop and the sessions it owns, the map is only touched by its thread
+	 */
+	private final class Shard implements Runnable {
+		final Thread thread;
+		final ConcurrentLinkedQueue<Task<?>> inbox = new ConcurrentLinkedQueue<Task<?>>();
+		private final HashMap<Long, GameSession> sessions = new HashMap<Long, GameSession>();
+		volatile boolean idle;
+		volatile boolean running = true;
+		// Set once the loop is done, tasks posted after that are failed or taken back
+		volatile boolean stopped;
+		volatile int sessionCount;
+
+		Shard(int index) {
+			thread = new Thread(this, "session-shard-" + index);
+			thread.setDaemon(true);
+		}
+
+		void add(GameSession session) {
+			sessions.put(session.getId(), session);
+			sessionCount = sessions.size();
+		}
+
+		void remove(GameSession session) {
+			sessions.remove(session.getId());
+			sessionCount = sessions.size();
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				Task<?> task = inbox.poll();
+				if (task == null) {
+					// announce the park first, so a producer that misses the poll unparks us
+					idle = true;
+					task = inbox.poll();
+					if (task == null) {
+						if (!running) {
+							stop();
+							return;
+						}
+						LockSupport.park(this);
+						idle = false;
+						continue;
+					}
+					idle = false;
+				}
+				task.execute(this);
+			}
+		}
+
+		/* FUNC: stop() -> void
+		 * DESC:
+		 * 	mark the loop done, then fail whatever got posted in the meantime
+		 */
+		private void stop() {
+			stopped = true;
+			Task<?> task;
+			while ((task = inbox.poll()) != null) {
+				task.fail(new IllegalStateException("server closed"));
+			}
+		}
+	}
+}
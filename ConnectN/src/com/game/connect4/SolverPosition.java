@@ -0,0 +1,222 @@
+package com.game.connect4;
+
+/**
+ * This is the Solver Position class,
+ * a standard 7x6 Connect 4 position packed for the PerfectSolver.
+ * Each column takes HEIGHT + 1 bits, the spare bit on top keeps shifted lines
+ * from spilling into the next column:
+ * 	mask    -- every disc on the board
+ * 	current -- the discs of the side to move
+ * so current + mask is a unique key of the position
+ *
+ * @author Yufan Lu
+ */
+public class SolverPosition {
+	// Constants
+	public final static int WIDTH = 7;
+	public final static int HEIGHT = 6;
+	public final static int CELLS = WIDTH * HEIGHT;
+	public final static int MIN_SCORE = -CELLS / 2 + 3;
+	public final static int MAX_SCORE = (CELLS + 1) / 2 - 3;
+	private final static int H1 = HEIGHT + 1;
+	private final static long BOTTOM_MASK = bottomMask();
+	private final static long BOARD_MASK = BOTTOM_MASK * ((1L << HEIGHT) - 1);
+
+	long current;
+	long mask;
+	int moves;
+
+	public SolverPosition() {
+	}
+
+	public SolverPosition(SolverPosition other) {
+		current = other.current;
+		mask = other.mask;
+		moves = other.moves;
+	}
+
+	/* FUNC: fromGame(GameLogic) -> SolverPosition
+	 * DESC:
+	 * 	convert a standard 7x6 connect 4 game that hasn't been won yet
+	 */
+	public static SolverPosition fromGame(GameLogic game) {
+		if (game.getXLen() != WIDTH || game.getYLen() != HEIGHT || game.getWinningSize() != 4) {
+			throw new IllegalArgumentException("The solver only handles the standard 7x6 connect 4 board");
+		}
+		if (game.winner() != -1) {
+			throw new IllegalArgumentException("The game is already won");
+		}
+		SolverPosition position = new SolverPosition();
+		int player = game.getCurrentPlayer();
+		for (int x = 0; x < WIDTH; x++) {
+			for (int y = 0; y < game.getColumnHeight(x); y++) {
+				long bit = 1L << (x * H1 + y);
+				position.mask |= bit;
+				if (game.getBoard().isSet(player, x * HEIGHT + y)) {
+					position.current |= bit;
+				}
+			}
+		}
+		position.moves = game.getMoveCount();
+		return position;
+	}
+
+	public int getMoveCount() {
+		return moves;
+	}
+
+	public long key() {
+		return current + mask;
+	}
+
+	/* FUNC: canonicalKey() -> long
+	 * DESC:
+	 * 	the smaller key of the position and its mirror image, the key of a perfect book
+	 */
+	public long canonicalKey() {
+		return Math.min(key(), mirrorKey());
+	}
+
+	/* FUNC: mirrorKey() -> long
+	 * DESC:
+	 * 	key of the position mirrored left to right, a column of the key never
+	 * 	carries into the next one, so the columns can be swapped on the key itself
+	 */
+	public long mirrorKey() {
+		long key = key();
+		long mirrored = 0;
+		long column = (1L << H1) - 1;
+		for (int x = 0; x < WIDTH; x++) {
+			mirrored |= ((key >>> (x * H1)) & column) << ((WIDTH - 1 - x) * H1);
+		}
+		return mirrored;
+	}
+
+	public boolean canPlay(int column) {
+		return (mask & topMaskColumn(column)) == 0;
+	}
+
+	/* FUNC: play(int) -> void
+	 * DESC:
+	 * 	drop a disc of the side to move, the column must be playable
+	 */
+	public void play(int column) {
+		playMove((mask + bottomMaskColumn(column)) & columnMask(column));
+	}
+
+	/* FUNC: playMove(long) -> void
+	 * DESC:
+	 * 	play a move given as the single bit of the cell it fills
+	 */
+	void playMove(long move) {
+		current ^= mask;
+		mask |= move;
+		moves++;
+	}
+
+	public boolean isWinningMove(int column) {
+		return (winningPosition() & possible() & columnMask(column)) != 0;
+	}
+
+	public boolean canWinNext() {
+		return (winningPosition() & possible()) != 0;
+	}
+
+	/* FUNC: possibleNonLosingMoves() -> long
+	 * DESC:
+	 * 	the playable cells that don't lose right away: when the opponent
+	 * 	threatens to win the move has to block, and a cell right under an
+	 * 	opponent's winning cell is never playable
+	 * RET:
+	 * 	bitmap of the moves, 0 if every move loses
+	 */
+	long possibleNonLosingMoves() {
+		long possibleMask = possible();
+		long opponentWin = opponentWinningPosition();
+		long forced = possibleMask & opponentWin;
+		if (forced != 0) {
+			if ((forced & (forced - 1)) != 0) {
+				// two threats at once, can't block both
+				return 0;
+			}
+			possibleMask = forced;
+		}
+		return possibleMask & ~(opponentWin >>> 1);
+	}
+
+	/* FUNC: moveScore(long) -> int
+	 * DESC:
+	 * 	number of winning cells the side to move would have after the move,
+	 * 	used to try the most threatening moves first
+	 */
+	int moveScore(long move) {
+		return Long.bitCount(computeWinningPosition(current | move, mask));
+	}
+
+	long possible() {
+		return (mask + BOTTOM_MASK) & BOARD_MASK;
+	}
+
+	private long winningPosition() {
+		return computeWinningPosition(current, mask);
+	}
+
+	private long opponentWinningPosition() {
+		return computeWinningPosition(current ^ mask, mask);
+	}
+
+	/* FUNC: computeWinningPosition(long, long) -> long
+	 * DESC:
+	 * 	the empty cells that would complete four in a row for the given discs
+	 */
+	private static long computeWinningPosition(long position, long mask) {
+		// vertical
+		long r = (position << 1) & (position << 2) & (position << 3);
+
+		// horizontal
+		long p = (position << H1) & (position << 2 * H1);
+		r |= p & (position << 3 * H1);
+		r |= p & (position >>> H1);
+		p = (position >>> H1) & (position >>> 2 * H1);
+		r |= p & (position << H1);
+		r |= p & (position >>> 3 * H1);
+
+		// diagonal going down
+		p = (position << HEIGHT) & (position << 2 * HEIGHT);
+		r |= p & (position << 3 * HEIGHT);
+		r |= p & (position >>> HEIGHT);
+		p = (position >>> HEIGHT) & (position >>> 2 * HEIGHT);
+		r |= p & (position << HEIGHT);
+		r |= p & (position >>> 3 * HEIGHT);
+
+		// diagonal going up
+		p = (position << (HEIGHT + 2)) & (position << 2 * (HEIGHT + 2));
+		r |= p & (position << 3 * (HEIGHT + 2));
+		r |= p & (position >>> (HEIGHT + 2));
+		p = (position >>> (HEIGHT + 2)) & (position >>> 2 * (HEIGHT + 2));
+		r |= p & (position << (HEIGHT + 2));
+		r |= p & (position >>> 3 * (HEIGHT + 2));
+
+		return r & (BOARD_MASK ^ mask);
+	}
+
+	private static long bottomMask() {
+		long result = 0;
+		for (int x = 0; x < WIDTH; x++) {
+			result |= 1L << (x * H1);
+		}
+		return result;
+	}
+
+	private static long topMaskColumn(int column) {
+		return 1L << (HEIGHT - 1 + column * H1);
+	}
+
+	private static long bottomMaskColumn(int column) {
+		return 1L << (column * H1);
+	}
+
+	static long columnMask(int column) {
+		return ((1L << HEIGHT) - 1) << (column * H1);
+	}
+}
@@ -0,0 +1,340 @@
+package com.game.connect4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This is the Sparse Game Logic class,
+ * the same game as GameLogic for huge, mostly empty boards.
+ * Only the discs are stored, so memory grows with the number of moves
+ * instead of xLen * yLen:
+ * 	heights -- column to number of discs in it, missing columns are empty
+ * 	cells   -- (x << 32 | y) to the player whose disc is there
+ * Both are open addressing hash maps on primitive arrays,
+ * a win is found by walking the four lines through the disc just placed
+ *
+ * @author Yufan Lu
+ */
+public class SparseGameLogic implements GameState {
+	// The four line directions, each line is walked both ways from the placed disc
+	private static final int[][] DIRECTION = {
+		{ +1,  0 }, { 0, +1 }, { +1, +1 }, { +1, -1 }
+	};
+
+	private final int xLen;
+	private final int yLen;
+	private final int winningSize;
+	private final LongIntMap heights = new LongIntMap();
+	private final LongIntMap cells = new LongIntMap();
+	// Columns played so far, used by undo()
+	private int[] moves = new int[16];
+	private int moveCount;
+
+	// The winner and the run that made it, the track is only built when asked for
+	private int winnerMark = -1;
+	private int winPly;
+	private int winStartX;
+	private int winStartY;
+	private int winDirection;
+	private int winLength;
+	private final List<MyPoint<Integer> > winningTrack = new ArrayList<MyPoint<Integer> >();
+
+	/*
+	 * FUNC: Constructor(int, int, int)
+	 * DESC:
+	 * 	Constructor for the SparseGameLogic, nothing is allocated per cell
+	 * ARGS:
+	 * 	xLen 				-- x size
+	 * 	yLen 				-- y size
+	 * 	winningRequiredSize -- the winning condition
+	 */
+	public SparseGameLogic(int xLen, int yLen, int winningRequiredSize) {
+		this.xLen = xLen;
+		this.yLen = yLen;
+		winningSize = winningRequiredSize;
+	}
+
+	public int getXLen() {
+		return xLen;
+	}
+
+	public int getYLen() {
+		return yLen;
+	}
+
+	public int getWinningSize() {
+		return winningSize;
+	}
+
+	public int getGrid(int x, int y) {
+		int mark = cells.get(cellKey(x, y));
+		if (mark == 0 && y == heights.get(x) && y < yLen) {
+			return GameLogic.GRID_PLACEABLE;
+		}
+		return mark;
+	}
+
+	public int getColumnHeight(int x) {
+		return heights.get(x);
+	}
+
+	public boolean isPlayable(int x) {
+		return heights.get(x) < yLen;
+	}
+
+	public int getMoveCount() {
+		return moveCount;
+	}
+
+	public int getMove(int ply) {
+		return moves[ply];
+	}
+
+	public int getCurrentPlayer() {
+		return (moveCount & 1) == 0 ? GameLogic.GRID_FIRST_PLAYER : GameLogic.GRID_SECOND_PLAYER;
+	}
+
+	/* FUNC: getDiscCount() -> int
+	 * DESC:
+	 * 	number of discs stored, the memory in use follows it
+	 */
+	public int getDiscCount() {
+		return cells.size();
+	}
+
+	public void reset() {
+		heights.clear();
+		cells.clear();
+		moveCount = 0;
+		winnerMark = -1;
+		winningTrack.clear();
+	}
+
+	public boolean clickGrid(int xIndex, int yIndex) {
+		if (xIndex >= 0 && xIndex < xLen && heights.get(xIndex) == yIndex && yIndex < yLen) {
+			play(xIndex);
+			return true;
+		}
+		return false;
+	}
+
+	public boolean play(int column) {
+		if (column < 0 || column >= xLen) {
+			return false;
+		}
+		int row = heights.get(column);
+		if (row >= yLen) {
+			return false;
+		}
+		int mark = getCurrentPlayer();
+		cells.put(cellKey(column, row), mark);
+		heights.put(column, row + 1);
+		if (winnerMark == -1 && checkLines(column, row, mark)) {
+			winnerMark = mark;
+			winPly = moveCount;
+		}
+		if (moveCount == moves.length) {
+			moves = Arrays.copyOf(moves, moveCount * 2);
+		}
+		moves[moveCount++] = column;
+		return true;
+	}
+
+	public boolean undo() {
+		if (moveCount == 0) {
+			return false;
+		}
+		int column = moves[--moveCount];
+		int row = heights.get(column) - 1;
+		cells.remove(cellKey(column, row));
+		if (row == 0) {
+			heights.remove(column);
+		} else {
+			heights.put(column, row);
+		}
+		if (winnerMark != -1 && winPly == moveCount) {
+			winnerMark = -1;
+			winningTrack.clear();
+		}
+		return true;
+	}
+
+	public int winner() {
+		return winnerMark;
+	}
+
+	public int status() {
+		if (winnerMark != -1) {
+			return GameLogic.STATUS_WIN;
+		}
+		return moveCount == (long) xLen * yLen ? GameLogic.STATUS_DRAW : GameLogic.STATUS_ONGOING;
+	}
+
+	public List<MyPoint<Integer> > GetWinningTrack() {
+		if (winnerMark != -1 && winningTrack.isEmpty()) {
+			for (int i = 0; i < winLength; i++) {
+				MyPoint<Integer> p = new MyPoint<Integer>();
+				p.posX = winStartX + DIRECTION[winDirection][0] * i;
+				p.posY = winStartY + DIRECTION[winDirection][1] * i;
+				winningTrack.add(p);
+			}
+		}
+		return winningTrack;
+	}
+
+	private static long cellKey(int x, int y) {
+		return ((long) x << 32) | (y & 0xFFFFFFFFL);
+	}
+
+	/* FUNC: checkLines(int, int, int) -> boolean
+	 * DESC:
+	 * 	count the player's discs both ways along the four lines through the disc just placed,
+	 * 	if one of them is long enough, remember the run for the winningTrack
+	 * RET:
+	 * 	whether the disc completes a winning line
+	 */
+	private boolean checkLines(int xIndex, int yIndex, int mark) {
+		for (int i = 0; i < 4; i++) {
+			int dx = DIRECTION[i][0];
+			int dy = DIRECTION[i][1];
+			int back = 0;
+			int newX = xIndex - dx;
+			int newY = yIndex - dy;
+			while (back < winningSize && newX >= 0 && newX < xLen && newY >= 0 && newY < yLen &&
+					cells.get(cellKey(newX, newY)) == mark) {
+				back++;
+				newX -= dx;
+				newY -= dy;
+			}
+			int forward = 0;
+			newX = xIndex + dx;
+			newY = yIndex + dy;
+			while (forward < winningSize && newX >= 0 && newX < xLen && newY >= 0 && newY < yLen &&
+					cells.get(cellKey(newX, newY)) == mark) {
+				forward++;
+				newX += dx;
+				newY += dy;
+			}
+			if (back + forward + 1 >= winningSize) {
+				winStartX = xIndex - dx * back;
+				winStartY = yIndex - dy * back;
+				winDirection = i;
+				winLength = back + forward + 1;
+				winningTrack.clear();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Long to int hash map on two primitive arrays, linear probing,
+	 * 0 is the value of a missing key. Removal shifts the following
+	 * entries back instead of leaving tombstones, so undo keeps it tidy
+	 */
+	static final class LongIntMap {
+		private final static long FREE = Long.MIN_VALUE;
+		private final static int MIN_CAPACITY = 16;
+
+		private long[] keys;
+		private int[] values;
+		private int size;
+		private int mask;
+
+		LongIntMap() {
+			allocate(MIN_CAPACITY);
+		}
+
+		int size() {
+			return size;
+		}
+
+		int get(long key) {
+			int slot = slot(key);
+			while (keys[slot] != FREE) {
+				if (keys[slot] == key) {
+					return values[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+			return 0;
+		}
+
+		void put(long key, int value) {
+			int slot = slot(key);
+			while (keys[slot] != FREE) {
+				if (keys[slot] == key) {
+					values[slot] = value;
+					return;
+				}
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+			values[slot] = value;
+			// keep the load under 1/2 so probe runs stay short
+			if (++size * 2 > keys.length) {
+				grow();
+			}
+		}
+
+		void remove(long key) {
+			int slot = slot(key);
+			while (keys[slot] != key) {
+				if (keys[slot] == FREE) {
+					return;
+				}
+				slot = (slot + 1) & mask;
+			}
+			// shift back every following entry that probed past the hole
+			int hole = slot;
+			slot = (slot + 1) & mask;
+			while (keys[slot] != FREE) {
+				int home = slot(keys[slot]);
+				if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+					keys[hole] = keys[slot];
+					values[hole] = values[slot];
+					hole = slot;
+				}
+				slot = (slot + 1) & mask;
+			}
+			keys[hole] = FREE;
+			values[hole] = 0;
+			size--;
+		}
+
+		void clear() {
+			if (keys.length > MIN_CAPACITY) {
+				allocate(MIN_CAPACITY);
+			} else {
+				Arrays.fill(keys, FREE);
+				Arrays.fill(values, 0);
+			}
+			size = 0;
+		}
+
+		private int slot(long key) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32)) & mask;
+		}
+
+		private void allocate(int capacity) {
+			keys = new long[capacity];
+			values = new int[capacity];
+			Arrays.fill(keys, FREE);
+			mask = capacity - 1;
+		}
+
+		private void grow() {
+			long[] oldKeys = keys;
+			int[] oldValues = values;
+			allocate(oldKeys.length * 2);
+			size = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != FREE) {
+					put(oldKeys[i], oldValues[i]);
+				}
+			}
+		}
+	}
+}
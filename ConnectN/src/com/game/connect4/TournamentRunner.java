@@ -0,0 +1,331 @@
+package com.game.connect4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This is the Tournament Runner class,
+ * plays bots against each other headlessly on GameLogic, every pair of bots in
+ * a round robin or the first bot against each of the others in a gauntlet.
+ * Every opening, a few random moves made from the seed, is played twice per
+ * pairing with the colours swapped, and pairings take turns so they all move
+ * along together. Results are counted per game pair, see PairStatistics.
+ * With --sprt a pairing stops as soon as the test accepts either hypothesis,
+ * and the tournament stops once every pairing has.
+ * Games are stopped as draws once no line can be completed any more, like in
+ * SelfPlaySimulator
+ *
+ * Usage: --tournament --bots SPEC,SPEC[,SPEC...] [--gauntlet] [--openings N] [--opening-plies P]
+ * 	[--threads T] [--seed S] [--board X Y N] [--sprt ELO0 ELO1] [--alpha A] [--beta B]
+ * 	[--report SECONDS], see BotFactory for the specs
+ *
+ * @author Yufan Lu
+ */
+public class TournamentRunner {
+	// Settings
+	private int xLen = 7;
+	private int yLen = 6;
+	private int winningLength = 4;
+	private String[] bots;
+	private boolean gauntlet = false;
+	private long openings = 500;
+	private int openingPlies = 2;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private long seed = 1;
+	private long reportMillis = 5000;
+	private boolean sprt = false;
+	private double elo0 = 0;
+	private double elo1 = 10;
+	private double alpha = 0.05;
+	private double beta = 0.05;
+
+	// Pairings: bot indexes, results and whether the SPRT is done with them,
+	// decided is written under the pairing's results lock, a stale read only costs a few more games
+	private int[][] pairings;
+	private PairStatistics[] results;
+	private boolean[] decided;
+	// Pairings the SPRT hasn't decided yet, the workers stop when it gets to 0
+	private final AtomicInteger undecided = new AtomicInteger();
+	private double[] bounds;
+	private final AtomicLong nextUnit = new AtomicLong();
+	// What the first worker to fail threw, the tournament stops then
+	private volatile RuntimeException failure;
+
+	public static void main(String[] args) throws InterruptedException {
+		TournamentRunner runner = new TournamentRunner();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--bots")) {
+				runner.bots = args[++i].split(",");
+			} else if (args[i].equals("--gauntlet")) {
+				runner.gauntlet = true;
+			} else if (args[i].equals("--openings")) {
+				runner.openings = Long.parseLong(args[++i]);
+			} else if (args[i].equals("--opening-plies")) {
+				runner.openingPlies = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--threads")) {
+				runner.threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--seed")) {
+				runner.seed = Long.parseLong(args[++i]);
+			} else if (args[i].equals("--board")) {
+				runner.xLen = Integer.parseInt(args[++i]);
+				runner.yLen = Integer.parseInt(args[++i]);
+				runner.winningLength = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--sprt")) {
+				runner.sprt = true;
+				runner.elo0 = Double.parseDouble(args[++i]);
+				runner.elo1 = Double.parseDouble(args[++i]);
+			} else if (args[i].equals("--alpha")) {
+				runner.alpha = Double.parseDouble(args[++i]);
+			} else if (args[i].equals("--beta")) {
+				runner.beta = Double.parseDouble(args[++i]);
+			} else if (args[i].equals("--report")) {
+				runner.reportMillis = (long) (Double.parseDouble(args[++i]) * 1000);
+			} else if (!args[i].equals("--tournament")) {
+				System.out.println("Unknown option " + args[i]);
+				return;
+			}
+		}
+		if (runner.bots == null || runner.bots.length < 2) {
+			System.out.println("Usage: --tournament --bots SPEC,SPEC[,SPEC...] [--gauntlet] [--openings N] "
+					+ "[--opening-plies P] [--threads T] [--seed S] [--board X Y N] [--sprt ELO0 ELO1] "
+					+ "[--alpha A] [--beta B] [--report SECONDS]");
+			return;
+		}
+		// fail early on a bad spec rather than in every thread
+		for (int i = 0; i < runner.bots.length; i++) {
+			BotFactory.create(runner.bots[i], runner.xLen, runner.yLen, runner.winningLength);
+		}
+		runner.run();
+	}
+
+	/* FUNC: run() -> void
+	 * DESC:
+	 * 	play the tournament, reporting progress until the last thread is done
+	 */
+	public void run() throws InterruptedException {
+		List<int[]> list = new ArrayList<int[]>();
+		for (int i = 0; i < bots.length; i++) {
+			for (int j = i + 1; j < bots.length; j++) {
+				if (!gauntlet || i == 0) {
+					list.add(new int[] { i, j });
+				}
+			}
+		}
+		pairings = list.toArray(new int[list.size()][]);
+		results = new PairStatistics[pairings.length];
+		for (int i = 0; i < results.length; i++) {
+			results[i] = new PairStatistics();
+		}
+		decided = new boolean[pairings.length];
+		undecided.set(pairings.length);
+		bounds = PairStatistics.sprtBounds(alpha, beta);
+		System.out.println(String.format("%s of %d bots on %dx%d/%d, %d pairings x %d openings of %d plies x 2 games, "
+				+ "%d threads, seed %d", gauntlet ? "Gauntlet" : "Round robin", bots.length, xLen, yLen, winningLength,
+				pairings.length, openings, openingPlies, threads, seed));
+		if (sprt) {
+			System.out.println(String.format("SPRT elo0 %.1f, elo1 %.1f, alpha %.3f, beta %.3f, LLR bounds [%.2f, %.2f]",
+					elo0, elo1, alpha, beta, bounds[0], bounds[1]));
+		}
+		long start = System.nanoTime();
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int i = 0; i < threads; i++) {
+			Thread worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						playUnits();
+					} catch (RuntimeException e) {
+						fail(e);
+					}
+				}
+			}, "tournament-" + i);
+			worker.start();
+			workers.add(worker);
+		}
+		for (int i = 0; i < workers.size(); i++) {
+			Thread worker = workers.get(i);
+			while (worker.isAlive()) {
+				worker.join(reportMillis);
+				if (worker.isAlive()) {
+					report(start, false);
+				}
+			}
+		}
+		if (failure != null) {
+			report(start, false);
+			System.out.println("Tournament failed, the results above are partial");
+			throw failure;
+		}
+		report(start, true);
+	}
+
+	/* FUNC: fail(RuntimeException) -> void
+	 * DESC:
+	 * 	keep the first failure of a worker and stop the others claiming units
+	 */
+	private synchronized void fail(RuntimeException e) {
+		if (failure == null) {
+			failure = e;
+		}
+		nextUnit.set(Long.MAX_VALUE / 2);
+	}
+
+	/* FUNC: playUnits() -> void
+	 * DESC:
+	 * 	one worker thread, keeps claiming an opening of a pairing and playing
+	 * 	both of its games until none are left or the SPRT decided every pairing
+	 */
+	private void playUnits() {
+		GameLogic game = new GameLogic(xLen, yLen, winningLength);
+		int[] opening = new int[openingPlies];
+		// Each thread builds the bots it needs, a bot is used by one thread at a time
+		Bot[] players = new Bot[bots.length];
+		long units = openings * pairings.length;
+		while (true) {
+			long unit = nextUnit.getAndIncrement();
+			if (unit >= units || (sprt && undecided.get() == 0)) {
+				break;
+			}
+			int pairing = (int) (unit % pairings.length);
+			if (decided[pairing]) {
+				continue;
+			}
+			long openingIndex = unit / pairings.length;
+			int openingLength = makeOpening(game, openingIndex, opening);
+			int first = pairings[pairing][0];
+			int second = pairings[pairing][1];
+			for (int k = 0; k < 2; k++) {
+				int bot = pairings[pairing][k];
+				if (players[bot] == null) {
+					players[bot] = BotFactory.create(bots[bot], xLen, yLen, winningLength);
+				}
+			}
+			long gameSeed = seed + unit * 2;
+			int firstResult = play(game, opening, openingLength, players[first], players[second], gameSeed);
+			int secondResult = PairStatistics.WIN -
+					play(game, opening, openingLength, players[second], players[first], gameSeed + 1);
+			PairStatistics stats = results[pairing];
+			synchronized (stats) {
+				stats.add(firstResult, secondResult);
+				if (sprt && !decided[pairing]) {
+					double llr = stats.llr(elo0, elo1);
+					if (llr <= bounds[0] || llr >= bounds[1]) {
+						decided[pairing] = true;
+						undecided.decrementAndGet();
+					}
+				}
+			}
+		}
+	}
+
+	/* FUNC: makeOpening(GameLogic, long, int[]) -> int
+	 * DESC:
+	 * 	the random opening of an index, the same for every pairing,
+	 * 	moves that end the game or leave it dead are skipped
+	 * RET:
+	 * 	number of moves written, less than asked for if the board runs out
+	 */
+	private int makeOpening(GameLogic game, long index, int[] opening) {
+		game.reset();
+		long random = (seed + index) * 0x9E3779B97F4A7C15L | 1L;
+		int[] columns = new int[xLen];
+		int length = 0;
+		int tries = 0;
+		while (length < opening.length && tries < 100 * (opening.length + 1)) {
+			tries++;
+			random ^= random << 13;
+			random ^= random >>> 7;
+			random ^= random << 17;
+			int count = game.playableColumns(columns);
+			if (count == 0) {
+				break;
+			}
+			int column = columns[(int) ((random >>> 1) % count)];
+			game.play(column);
+			if (game.status() != GameLogic.STATUS_ONGOING || game.isDeadPosition()) {
+				game.undo();
+				continue;
+			}
+			opening[length++] = column;
+		}
+		return length;
+	}
+
+	/* FUNC: play(GameLogic, int[], int, Bot, Bot, long) -> int
+	 * DESC:
+	 * 	play one game from the opening, the first bot has the first player's discs,
+	 * 	the ones of the opening included
+	 * RET:
+	 * 	result for the first bot, see PairStatistics
+	 */
+	private int play(GameLogic game, int[] opening, int openingLength, Bot first, Bot second, long gameSeed) {
+		game.reset();
+		for (int i = 0; i < openingLength; i++) {
+			game.play(opening[i]);
+		}
+		first.newGame(gameSeed);
+		second.newGame(~gameSeed);
+		while (game.status() == GameLogic.STATUS_ONGOING && !game.isDeadPosition()) {
+			Bot bot = (game.getMoveCount() & 1) == 0 ? first : second;
+			game.play(bot.chooseColumn(game));
+		}
+		int winner = game.winner();
+		if (winner == -1) {
+			return PairStatistics.DRAW;
+		}
+		return winner == GameLogic.GRID_FIRST_PLAYER ? PairStatistics.WIN : PairStatistics.LOSS;
+	}
+
+	/* FUNC: report(long, boolean) -> void
+	 * DESC:
+	 * 	print every pairing, with standings against the field at the end of a round robin
+	 */
+	private void report(long start, boolean done) {
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long games = 0;
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < pairings.length; i++) {
+			PairStatistics stats = results[i];
+			synchronized (stats) {
+				games += stats.getPairs() * 2;
+				text.append(String.format("  %s vs %s: %s", bots[pairings[i][0]], bots[pairings[i][1]], stats));
+				if (sprt) {
+					double llr = stats.llr(elo0, elo1);
+					text.append(String.format(", LLR %.2f", llr));
+					if (decided[i]) {
+						text.append(llr >= bounds[1] ? " H1 accepted" : " H0 accepted");
+					}
+				}
+			}
+			text.append('\n');
+		}
+		System.out.print(String.format("%.1fs: %d games, %.1f games/s%n%s", seconds, games, games / seconds, text));
+		if (!done || gauntlet || bots.length < 3) {
+			return;
+		}
+		final PairStatistics[] standings = new PairStatistics[bots.length];
+		Integer[] order = new Integer[bots.length];
+		for (int i = 0; i < bots.length; i++) {
+			standings[i] = new PairStatistics();
+			order[i] = i;
+		}
+		for (int i = 0; i < pairings.length; i++) {
+			standings[pairings[i][0]].add(results[i], false);
+			standings[pairings[i][1]].add(results[i], true);
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(standings[b].score(), standings[a].score());
+			}
+		});
+		System.out.println("Standings against the field:");
+		for (int i = 0; i < order.length; i++) {
+			System.out.println(String.format("%3d. %-20s %s", i + 1, bots[order[i]], standings[order[i]]));
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package com.game.connect4;
+
+import java.util.Arrays;
+
+/**
+ * This is the Transposition Table class,
+ * a fixed size cache of search results kept in one preallocated long[].
+ * Every entry is two longs, the position key XOR the packed data and the packed data:
+ * 	bits  0-31 -- score
+ * 	bits 32-33 -- bound (0 means an empty entry)
+ * 	bits 34-41 -- depth
+ * 	bits 42-47 -- generation of the search that wrote it
+ * 	bits 48-63 -- best column + 1, 0 for none
+ * Entries come in buckets of two: the first slot keeps the deepest result,
+ * the second one always takes the newest.
+ * The table takes no locks, so search threads can share it: an entry torn by two
+ * threads writing at once no longer XORs back to its key and simply reads as a miss
+ *
+ * @author Yufan Lu
+ */
+public class TranspositionTable {
+	// Constants
+	public final static int BOUND_EXACT = 1;
+	public final static int BOUND_LOWER = 2;
+	public final static int BOUND_UPPER = 3;
+	private final static int LONGS_PER_ENTRY = 2;
+	private final static int LONGS_PER_BUCKET = 2 * LONGS_PER_ENTRY;
+	private final static int MAX_DEPTH = 255;
+	private final static int GENERATION_MASK = 63;
+	// Wider boards still get scores stored, just without the best column
+	private final static int MAX_COLUMN = 0xFFFF;
+
+	private final long[] table;
+	private final long bucketMask;
+	private int generation;
+
+	/*
+	 * FUNC: Constructor(int)
+	 * DESC:
+	 * 	allocate the table, rounded down to a power of two buckets
+	 * ARGS:
+	 * 	megabytes -- memory budget
+	 */
+	public TranspositionTable(int megabytes) {
+		long buckets = Math.max(1L, ((long) megabytes << 20) / (LONGS_PER_BUCKET * 8));
+		buckets = Long.highestOneBit(Math.min(buckets, Integer.MAX_VALUE / LONGS_PER_BUCKET));
+		table = new long[(int) buckets * LONGS_PER_BUCKET];
+		bucketMask = buckets - 1;
+	}
+
+	public int getEntryCount() {
+		return table.length / LONGS_PER_ENTRY;
+	}
+
+	/* FUNC: newSearch() -> void
+	 * DESC:
+	 * 	start a new search, older entries become the first to be replaced
+	 */
+	public void newSearch() {
+		generation = (generation + 1) & GENERATION_MASK;
+	}
+
+	/* FUNC: clear() -> void
+	 * DESC:
+	 * 	forget everything
+	 */
+	public void clear() {
+		Arrays.fill(table, 0L);
+	}
+
+	/* FUNC: probe(long) -> long
+	 * DESC:
+	 * 	look the position up
+	 * ARG:
+	 * 	key -- position key
+	 * RET:
+	 * 	the packed data, 0 if the position isn't stored
+	 */
+	public long probe(long key) {
+		int index = (int) (key & bucketMask) * LONGS_PER_BUCKET;
+		for (int i = index; i < index + LONGS_PER_BUCKET; i += LONGS_PER_ENTRY) {
+			long data = table[i + 1];
+			if (data != 0 && (table[i] ^ data) == key) {
+				return data;
+			}
+		}
+		return 0L;
+	}
+
+	/* FUNC: store(long, int, int, int, int) -> void
+	 * DESC:
+	 * 	remember a search result
+	 * ARG:
+	 * 	key    -- position key
+	 * 	score  -- score for the side to move
+	 * 	bound  -- BOUND_EXACT, BOUND_LOWER or BOUND_UPPER
+	 * 	depth  -- depth the score was searched to
+	 * 	column -- best column, -1 for none
+	 */
+	public void store(long key, int score, int bound, int depth, int column) {
+		long data = pack(score, bound, Math.min(depth, MAX_DEPTH), generation, column);
+		int index = (int) (key & bucketMask) * LONGS_PER_BUCKET;
+		long old = table[index + 1];
+		if (old == 0 || (table[index] ^ old) == key || depthOf(old) <= depth ||
+				generationOf(old) != generation) {
+			table[index] = key ^ data;
+			table[index + 1] = data;
+		} else {
+			table[index + 2] = key ^ data;
+			table[index + 3] = data;
+		}
+	}
+
+	private static long pack(int score, int bound, int depth, int generation, int column) {
+		return (score & 0xFFFFFFFFL) |
+				((long) bound << 32) |
+				((long) depth << 34) |
+				((long) generation << 42) |
+				((long) (column < MAX_COLUMN ? column + 1 : 0) << 48);
+	}
+
+	public static int scoreOf(long data) {
+		return (int) data;
+	}
+
+	public static int boundOf(long data) {
+		return (int) (data >>> 32) & 3;
+	}
+
+	public static int depthOf(long data) {
+		return (int) (data >>> 34) & MAX_DEPTH;
+	}
+
+	public static int columnOf(long data) {
+		return (int) (data >>> 48) - 1;
+	}
+
+	private static int generationOf(long data) {
+		return (int) (data >>> 42) & GENERATION_MASK;
+	}
+}
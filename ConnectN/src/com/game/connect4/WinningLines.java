@@ -0,0 +1,218 @@
+package com.game.connect4;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This is the Winning Lines class,
+ * every run of winningSize cells a player could win with, listed once,
+ * built once per (xLen, yLen, winningSize) and shared, only the most recently
+ * used CACHE_SIZE tables are kept, games hold on to theirs anyway.
+ * Line i holds the cells lineCells[i * size] .. lineCells[i * size + size - 1],
+ * and the lines through cell c are cellLines[cellLineStart[c]] .. cellLines[cellLineStart[c + 1] - 1].
+ * Boards up to 64 cells also get every line as a bitmask
+ *
+ * @author Yufan Lu
+ */
+public final class WinningLines {
+	// Shared tables, one per board size and winning length, least recently used first
+	private static final int CACHE_SIZE = 32;
+	private static final Map<String, WinningLines> CACHE = new LinkedHashMap<String, WinningLines>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, WinningLines> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+	// Directions a line can run in, same order as GameLogic, each line is only listed from its first cell
+	private static final int[][] DIRECTION = {
+		{ +1,  0 }, { 0, +1 }, { +1, +1 }, { +1, -1 }
+	};
+
+	public final int xLen;
+	public final int yLen;
+	public final int size;
+	public final int lineCount;
+	public final int[] lineCells;
+	public final byte[] lineDirection;
+	public final int[] cellLineStart;
+	public final int[] cellLines;
+	// Only filled for boards up to 64 cells
+	public final long[] masks;
+	// No position with fewer discs can have every line blocked: each line needs
+	// a disc of both players, and one disc blocks at most the lines through its cell
+	public final int minDeadDiscs;
+
+	/* FUNC: forSize(int, int, int) -> WinningLines
+	 * DESC:
+	 * 	get the table of a board, building it the first time
+	 */
+	public static WinningLines forSize(int xLen, int yLen, int winningSize) {
+		String id = xLen + "x" + yLen + "/" + winningSize;
+		synchronized (CACHE) {
+			WinningLines lines = CACHE.get(id);
+			if (lines == null) {
+				lines = new WinningLines(xLen, yLen, winningSize);
+				CACHE.put(id, lines);
+			}
+			return lines;
+		}
+	}
+
+	private WinningLines(int xLen, int yLen, int winningSize) {
+		this.xLen = xLen;
+		this.yLen = yLen;
+		size = winningSize;
+		int cells = xLen * yLen;
+
+		// first pass counts, second pass fills
+		int[] perCell = new int[cells];
+		lineCount = scan(null, null, perCell);
+		lineCells = new int[lineCount * size];
+		lineDirection = new byte[lineCount];
+		scan(lineCells, lineDirection, null);
+
+		cellLineStart = new int[cells + 1];
+		for (int c = 0; c < cells; c++) {
+			cellLineStart[c + 1] = cellLineStart[c] + perCell[c];
+		}
+		cellLines = new int[cellLineStart[cells]];
+		int mostPerCell = 1;
+		for (int c = 0; c < cells; c++) {
+			mostPerCell = Math.max(mostPerCell, perCell[c]);
+		}
+		minDeadDiscs = 2 * ((lineCount + mostPerCell - 1) / mostPerCell);
+		int[] filled = new int[cells];
+		for (int line = 0; line < lineCount; line++) {
+			for (int k = 0; k < size; k++) {
+				int cell = lineCells[line * size + k];
+				cellLines[cellLineStart[cell] + filled[cell]++] = line;
+			}
+		}
+
+		if (cells <= 64) {
+			masks = new long[lineCount];
+			for (int line = 0; line < lineCount; line++) {
+				for (int k = 0; k < size; k++) {
+					masks[line] |= 1L << lineCells[line * size + k];
+				}
+			}
+		} else {
+			masks = null;
+		}
+	}
+
+	/* FUNC: scan(int[], byte[], int[]) -> int
+	 * DESC:
+	 * 	walk every line that fits on the board once, from its first cell
+	 * ARG:
+	 * 	cells      -- filled with the cells of each line, or null
+	 * 	directions -- filled with the direction of each line, or null
+	 * 	perCell    -- counts the lines through each cell, or null
+	 * RET:
+	 * 	number of lines
+	 */
+	private int scan(int[] cells, byte[] directions, int[] perCell) {
+		int line = 0;
+		for (int x = 0; x < xLen; x++) {
+			for (int y = 0; y < yLen; y++) {
+				for (int d = 0; d < DIRECTION.length; d++) {
+					int endX = x + DIRECTION[d][0] * (size - 1);
+					int endY = y + DIRECTION[d][1] * (size - 1);
+					if (endX < 0 || endX >= xLen || endY < 0 || endY >= yLen) {
+						continue;
+					}
+					for (int k = 0; k < size; k++) {
+						int cell = (x + DIRECTION[d][0] * k) * yLen + y + DIRECTION[d][1] * k;
+						if (cells != null) {
+							cells[line * size + k] = cell;
+						}
+						if (perCell != null) {
+							perCell[cell]++;
+						}
+					}
+					if (directions != null) {
+						directions[line] = (byte) d;
+					}
+					line++;
+				}
+			}
+		}
+		return line;
+	}
+
+	/* FUNC: count(BitBoard, int, int) -> int
+	 * DESC:
+	 * 	number of the player's discs on a line
+	 * ARG:
+	 * 	board  -- the discs
+	 * 	player -- GRID_FIRST_PLAYER or GRID_SECOND_PLAYER
+	 * 	line   -- line id
+	 */
+	public int count(BitBoard board, int player, int line) {
+		if (masks != null) {
+			BitBoard.Small small = (BitBoard.Small) board;
+			long words = player == GameLogic.GRID_FIRST_PLAYER ? small.first : small.second;
+			return Long.bitCount(words & masks[line]);
+		}
+		int result = 0;
+		int base = line * size;
+		for (int k = 0; k < size; k++) {
+			if (board.isSet(player, lineCells[base + k])) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	/* FUNC: completedLine(BitBoard, int, int) -> int
+	 * DESC:
+	 * 	find a line through the cell the player owns completely
+	 * RET:
+	 * 	line id, -1 if there's none
+	 */
+	public int completedLine(BitBoard board, int player, int cell) {
+		int end = cellLineStart[cell + 1];
+		if (masks != null) {
+			BitBoard.Small small = (BitBoard.Small) board;
+			long words = player == GameLogic.GRID_FIRST_PLAYER ? small.first : small.second;
+			for (int i = cellLineStart[cell]; i < end; i++) {
+				long mask = masks[cellLines[i]];
+				if ((words & mask) == mask) {
+					return cellLines[i];
+				}
+			}
+			return -1;
+		}
+		for (int i = cellLineStart[cell]; i < end; i++) {
+			if (count(board, player, cellLines[i]) == size) {
+				return cellLines[i];
+			}
+		}
+		return -1;
+	}
+
+	/* FUNC: countThreats(BitBoard, int) -> int
+	 * DESC:
+	 * 	number of lines the player is one disc away from completing,
+	 * 	with no opponent's disc on them
+	 */
+	public int countThreats(BitBoard board, int player) {
+		int opponent = player == GameLogic.GRID_FIRST_PLAYER ?
+				GameLogic.GRID_SECOND_PLAYER : GameLogic.GRID_FIRST_PLAYER;
+		int threats = 0;
+		for (int line = 0; line < lineCount; line++) {
+			if (count(board, player, line) == size - 1 && count(board, opponent, line) == 0) {
+				threats++;
+			}
+		}
+		return threats;
+	}
+
+	/* FUNC: isComplete(BitBoard, int, int) -> boolean
+	 * DESC:
+	 * 	whether the player owns every cell of the line
+	 */
+	public boolean isComplete(BitBoard board, int player, int line) {
+		return count(board, player, line) == size;
+	}
+}
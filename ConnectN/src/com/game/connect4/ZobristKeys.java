@@ -0,0 +1,90 @@
+package com.game.connect4;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This is the Zobrist Keys class,
+ * the random keys used to hash a position, one per (player, cell) plus one for the side to move.
+ * Boards over 64 cells get a second set of keys so their hash can be 128 bits wide.
+ * The keys only depend on the board size, so the same position hashes the same in every run,
+ * and a table dropped from the cache of the CACHE_SIZE most recently used is made again the same
+ *
+ * @author Yufan Lu
+ */
+public final class ZobristKeys {
+	// Shared tables, one per board size, least recently used first
+	private static final int CACHE_SIZE = 32;
+	private static final Map<Long, ZobristKeys> CACHE = new LinkedHashMap<Long, ZobristKeys>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, ZobristKeys> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	public final long[] first;
+	public final long[] second;
+	public final long side;
+	// Only filled for boards over 64 cells
+	public final long[] firstHigh;
+	public final long[] secondHigh;
+	public final long sideHigh;
+
+	/* FUNC: forSize(int, int) -> ZobristKeys
+	 * DESC:
+	 * 	get the keys of a board size, generating them the first time
+	 * ARG:
+	 * 	xLen -- x size
+	 * 	yLen -- y size
+	 */
+	public static ZobristKeys forSize(int xLen, int yLen) {
+		Long id = Long.valueOf(((long) xLen << 32) | yLen);
+		synchronized (CACHE) {
+			ZobristKeys keys = CACHE.get(id);
+			if (keys == null) {
+				keys = new ZobristKeys(xLen, yLen);
+				CACHE.put(id, keys);
+			}
+			return keys;
+		}
+	}
+
+	private ZobristKeys(int xLen, int yLen) {
+		int cells = xLen * yLen;
+		long[] state = { ((long) xLen << 32) | yLen };
+		first = fill(new long[cells], state);
+		second = fill(new long[cells], state);
+		side = next(state);
+		if (cells > 64) {
+			firstHigh = fill(new long[cells], state);
+			secondHigh = fill(new long[cells], state);
+			sideHigh = next(state);
+		} else {
+			firstHigh = null;
+			secondHigh = null;
+			sideHigh = 0L;
+		}
+	}
+
+	public boolean isWide() {
+		return firstHigh != null;
+	}
+
+	private static long[] fill(long[] keys, long[] state) {
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = next(state);
+		}
+		return keys;
+	}
+
+	/* FUNC: next(long[]) -> long
+	 * DESC:
+	 * 	splitmix64 step, good enough spread for hashing and reproducible everywhere
+	 */
+	private static long next(long[] state) {
+		long z = (state[0] += 0x9E3779B97F4A7C15L);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
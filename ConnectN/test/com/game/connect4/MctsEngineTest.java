@@ -0,0 +1,55 @@
+package com.game.connect4;
+
+/**
+ * This is the MCTS Engine Test class,
+ * checks the shared tree of MctsEngine stays consistent: every iteration but
+ * the one that only visits the bare root goes through exactly one root child,
+ * so the root's child visits add up to the iteration count, on the first
+ * search and on later ones that reuse the node pool.
+ * Exits with status 1 on the first failure
+ *
+ * Usage: MctsEngineTest
+ *
+ * @author Yufan Lu
+ */
+public class MctsEngineTest {
+	private final static int[][] CONFIGS = {
+		{ 7, 6, 4 }, { 19, 19, 5 }
+	};
+
+	public static void main(String[] args) {
+		for (int i = 0; i < CONFIGS.length; i++) {
+			int xLen = CONFIGS[i][0];
+			int yLen = CONFIGS[i][1];
+			int winningLength = CONFIGS[i][2];
+			MctsEngine engine = new MctsEngine(1, 1 << 16);
+			GameLogic game = new GameLogic(xLen, yLen, winningLength);
+			for (int search = 0; search < 3; search++) {
+				checkVisits(engine, game, 20000, xLen + "x" + yLen + "/" + winningLength + " search " + search);
+				game.play(search % xLen);
+			}
+			// a pool this small fills up in the middle of the search
+			checkVisits(new MctsEngine(1, 64 * xLen), game, 20000, xLen + "x" + yLen + "/" + winningLength + " full pool");
+			engine.shutdown();
+		}
+		System.out.println("MctsEngineTest passed");
+	}
+
+	/* FUNC: checkVisits(MctsEngine, GameLogic, long, String) -> void
+	 * DESC:
+	 * 	search the position and check the root child visits against the iteration count
+	 */
+	private static void checkVisits(MctsEngine engine, GameLogic game, long iterations, String name) {
+		MctsResult result = engine.search(game, 0, iterations);
+		long total = 0;
+		for (int column = 0; column < result.columnVisits.length; column++) {
+			total += result.columnVisits[column];
+		}
+		if (result.nodes != iterations || total != iterations - 1) {
+			System.out.println(String.format("FAILED %s: %d iterations, root child visits add up to %d",
+					name, result.nodes, total));
+			System.exit(1);
+		}
+		System.out.println(String.format("%s: %d iterations, %d root child visits", name, result.nodes, total));
+	}
+}